@@ -0,0 +1,25 @@
+package com.delinea.secrets.jenkins.client;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Builds {@link SecretSnapshot}s for benchmarks without going through the SDK.
+ */
+public final class SecretSnapshots {
+	private SecretSnapshots() {
+	}
+
+	/**
+	 * @param fieldCount - How many fields the secret has; field {@code i} is named
+	 *                   {@code Field i}, has the slug {@code field-i} and the
+	 *                   value {@code value-i}.
+	 */
+	public static SecretSnapshot of(int id, int fieldCount) {
+		List<SecretSnapshot.Field> fields = new ArrayList<>(fieldCount);
+		for (int i = 0; i < fieldCount; i++) {
+			fields.add(new SecretSnapshot.Field("Field " + i, "field-" + i, "value-" + i));
+		}
+		return new SecretSnapshot(id, fields);
+	}
+}
@@ -0,0 +1,69 @@
+package com.delinea.secrets.jenkins.global.cred;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.cloudbees.plugins.credentials.CredentialsScope;
+import com.delinea.secrets.jenkins.global.cred.VaultClient.UsernamePassword;
+
+import hudson.util.Secret;
+
+/**
+ * {@link SecretServerCredentials#getUsername()} and
+ * {@link SecretServerCredentials#getPassword()} when the credentials are
+ * already in memory, as they are for nearly every lookup. For comparison,
+ * {@link #getPasswordReEncrypted()} wraps the password in a new
+ * {@link Secret} on each call, as lookups used to.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class CredentialLookupBenchmark {
+	private SecretServerCredentials credentials;
+
+	@Setup
+	public void setUp() throws Exception {
+		credentials = new SecretServerCredentials(CredentialsScope.GLOBAL, "bench", null, "https://localhost",
+				"bench-service-account", "1", "username", "password", null, null, null, null, null, false);
+		// a refresh interval of zero keeps the value loaded here
+		SecretServerCredentials.setRefreshInterval(0);
+		credentials.vaultCredential().get(() -> new UsernamePassword("bench", "bench-password!"), Duration.ZERO,
+				Runnable::run);
+	}
+
+	@Benchmark
+	public String getUsername() {
+		return credentials.getUsername();
+	}
+
+	@Benchmark
+	public Secret getPassword() {
+		return credentials.getPassword();
+	}
+
+	@Benchmark
+	@Threads(8)
+	public Secret getPasswordConcurrently() {
+		return credentials.getPassword();
+	}
+
+	@Benchmark
+	public Secret getPasswordReEncrypted() {
+		return Secret.fromString(credentials.getPassword().getPlainText());
+	}
+}
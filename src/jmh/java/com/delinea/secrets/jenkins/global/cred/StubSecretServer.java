@@ -0,0 +1,74 @@
+package com.delinea.secrets.jenkins.global.cred;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * A local stand-in for Secret Server that answers the token and secret
+ * requests the plugin makes, so benchmarks run offline. Every secret has a
+ * {@code username} and a {@code password} field.
+ */
+final class StubSecretServer implements AutoCloseable {
+	static final String USERNAME = "svc-benchmark";
+	static final String PASSWORD = "benchmark-password!";
+
+	private static final Pattern SECRET_PATH = Pattern.compile(".*/secrets/(\\d+)");
+
+	private final HttpServer server;
+	private final ExecutorService executor = Executors.newFixedThreadPool(8);
+
+	StubSecretServer() throws IOException {
+		server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+		server.createContext("/", this::handle);
+		server.setExecutor(executor);
+		server.start();
+	}
+
+	String getUrl() {
+		return "http://127.0.0.1:" + server.getAddress().getPort() + "/SecretServer";
+	}
+
+	private void handle(HttpExchange exchange) throws IOException {
+		try {
+			exchange.getRequestBody().readAllBytes();
+			String path = exchange.getRequestURI().getPath();
+			Matcher secret = SECRET_PATH.matcher(path);
+			if (path.endsWith("/oauth2/token")) {
+				respond(exchange, "{\"access_token\":\"stub-token\",\"token_type\":\"bearer\",\"expires_in\":1200}");
+			} else if (secret.matches()) {
+				respond(exchange, "{\"id\":" + secret.group(1) + ",\"name\":\"Benchmark\",\"items\":["
+						+ "{\"fieldName\":\"Username\",\"slug\":\"username\",\"itemValue\":\"" + USERNAME + "\"},"
+						+ "{\"fieldName\":\"Password\",\"slug\":\"password\",\"itemValue\":\"" + PASSWORD + "\"}]}");
+			} else {
+				exchange.sendResponseHeaders(404, -1);
+			}
+		} finally {
+			exchange.close();
+		}
+	}
+
+	private static void respond(HttpExchange exchange, String json) throws IOException {
+		byte[] body = json.getBytes(StandardCharsets.UTF_8);
+		exchange.getResponseHeaders().set("Content-Type", "application/json");
+		exchange.sendResponseHeaders(200, body.length);
+		try (OutputStream out = exchange.getResponseBody()) {
+			out.write(body);
+		}
+	}
+
+	@Override
+	public void close() {
+		server.stop(0);
+		executor.shutdownNow();
+	}
+}
@@ -0,0 +1,64 @@
+package com.delinea.secrets.jenkins.global.cred;
+
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.delinea.secrets.jenkins.client.SecretServerClientRegistry;
+import com.delinea.secrets.jenkins.global.cred.VaultClient.UsernamePassword;
+import com.delinea.secrets.jenkins.util.DelineaProxyUtil;
+
+/**
+ * A full {@link VaultClient#fetchCredentials} round trip against
+ * {@link StubSecretServer}, with the secret value cache disabled as it is by
+ * default. The stub is excluded from proxying so that the Jenkins proxy is
+ * never consulted.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class VaultClientBenchmark {
+	private StubSecretServer server;
+	private String url;
+
+	@Setup
+	public void setUp() throws Exception {
+		Logger.getLogger(DelineaProxyUtil.class.getName()).setLevel(Level.WARNING);
+		server = new StubSecretServer();
+		url = server.getUrl();
+	}
+
+	@TearDown
+	public void tearDown() {
+		SecretServerClientRegistry.get().invalidateAll();
+		server.close();
+	}
+
+	@Benchmark
+	public UsernamePassword fetchCredentials() throws Exception {
+		return new VaultClient().fetchCredentials(url, "1", "bench", "bench-password!", "username", "password", null,
+				null, null, null, "localhost, 127.0.0.1");
+	}
+
+	@Benchmark
+	@Threads(8)
+	public UsernamePassword fetchCredentialsConcurrently() throws Exception {
+		return fetchCredentials();
+	}
+}
@@ -0,0 +1,63 @@
+package com.delinea.secrets.jenkins.util;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * {@link DelineaProxyUtil#resolveProxy} for a host that goes through the plugin
+ * proxy and for one excluded by NO_PROXY, with and without the remembered
+ * decision. Neither path consults the Jenkins proxy, so no Jenkins instance is
+ * needed.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class ProxyResolutionBenchmark {
+	private static final String NO_PROXY = "localhost, 127.0.0.1, .internal.example.com, *.corp.local, 10.0.0.0/8";
+
+	@Setup
+	public void setUp() {
+		// the proxy summary is logged whenever a decision is made
+		Logger.getLogger(DelineaProxyUtil.class.getName()).setLevel(Level.WARNING);
+	}
+
+	@Benchmark
+	public Map<String, String> proxied() {
+		return DelineaProxyUtil.resolveProxy("https://vault.example.com/SecretServer", "proxy.example.com", "3128",
+				"proxy-user", "proxy-password", NO_PROXY);
+	}
+
+	@Benchmark
+	public Map<String, String> proxiedUncached() {
+		DelineaProxyUtil.invalidateCache();
+		return proxied();
+	}
+
+	@Benchmark
+	public Map<String, String> noProxyMatch() {
+		return DelineaProxyUtil.resolveProxy("https://vault.internal.example.com/SecretServer", "proxy.example.com",
+				"3128", "proxy-user", "proxy-password", NO_PROXY);
+	}
+
+	@Benchmark
+	public Map<String, String> noProxyMatchUncached() {
+		DelineaProxyUtil.invalidateCache();
+		return noProxyMatch();
+	}
+}
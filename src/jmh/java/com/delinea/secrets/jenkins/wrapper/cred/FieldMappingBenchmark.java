@@ -0,0 +1,55 @@
+package com.delinea.secrets.jenkins.wrapper.cred;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.delinea.secrets.jenkins.client.SecretSnapshot;
+import com.delinea.secrets.jenkins.client.SecretSnapshots;
+
+/**
+ * Mapping a fetched secret's fields to environment variables, as
+ * {@link ServerBuildWrapper#setUp} does for every secret of a build. Half of
+ * the fields are mapped, alternately by name and by slug.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class FieldMappingBenchmark {
+    @Param({"4", "20", "100"})
+    public int fields;
+
+    private ServerSecret serverSecret;
+    private SecretSnapshot secret;
+
+    @Setup
+    public void setUp() {
+        final List<ServerSecret.Mapping> mappings = new ArrayList<>();
+        for (int i = 0; i < fields; i += 2) {
+            mappings.add(new ServerSecret.Mapping("VAR_" + i, i % 4 == 0 ? "FIELD " + i : "Field-" + i));
+        }
+        serverSecret = new ServerSecret(1, mappings);
+        secret = SecretSnapshots.of(1, fields);
+    }
+
+    @Benchmark
+    public Map<String, String> mapFields() {
+        return ServerBuildWrapper.mapFields(serverSecret, secret, "", null);
+    }
+}
@@ -0,0 +1,80 @@
+package com.delinea.secrets.jenkins.wrapper.cred;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Console masking throughput. Each operation masks 1 MiB of build log, so the
+ * score in operations per second is the throughput in MiB/s. One line in 50
+ * contains a secret.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class MaskingBenchmark {
+    private static final int LOG_BYTES = 1 << 20;
+    private static final String ALPHABET = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789";
+
+    @Param({"1", "10", "100", "1000"})
+    public int maskedValues;
+
+    private byte[] log;
+    private SecretMatcher matcher;
+
+    @Setup
+    public void setUp() {
+        final Random random = new Random(42);
+        final List<String> secrets = new ArrayList<>(maskedValues);
+        for (int i = 0; i < maskedValues; i++) {
+            secrets.add(randomString(random, 16 + random.nextInt(17)));
+        }
+        matcher = SecretMatcher.compile(secrets, StandardCharsets.UTF_8.name());
+
+        final ByteArrayOutputStream out = new ByteArrayOutputStream(LOG_BYTES);
+        for (int line = 0; out.size() < LOG_BYTES; line++) {
+            final StringBuilder text = new StringBuilder("[INFO] ").append(randomString(random, 60));
+            if (line % 50 == 0) {
+                text.append(" token=").append(secrets.get(random.nextInt(secrets.size())));
+            }
+            out.writeBytes(text.append('\n').toString().getBytes(StandardCharsets.UTF_8));
+        }
+        log = out.toByteArray();
+    }
+
+    private static String randomString(final Random random, final int length) {
+        final StringBuilder s = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            s.append(ALPHABET.charAt(random.nextInt(ALPHABET.length())));
+        }
+        return s.toString();
+    }
+
+    @Benchmark
+    public void mask() throws IOException {
+        try (OutputStream out = new ServerConsoleLogFilter.MaskingOutputStream(OutputStream.nullOutputStream(),
+                () -> matcher)) {
+            out.write(log);
+        }
+    }
+}
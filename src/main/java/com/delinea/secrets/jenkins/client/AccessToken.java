@@ -0,0 +1,55 @@
+package com.delinea.secrets.jenkins.client;
+
+import java.time.Duration;
+import java.time.Instant;
+
+/**
+ * An OAuth access token and the window in which it may be used.
+ */
+final class AccessToken {
+	/**
+	 * Tokens are treated as expired slightly early so that a request does not
+	 * leave with a token that runs out while it is in flight; by at most half
+	 * their lifetime, so that short-lived tokens are still usable.
+	 */
+	private static final Duration EXPIRY_SKEW = Duration.ofSeconds(30);
+
+	private final String tokenType;
+	private final String value;
+	private final Instant issuedAt;
+	private final Instant expiresAt;
+	private final Instant usableUntil;
+
+	AccessToken(String tokenType, String value, Instant issuedAt, Duration lifetime) {
+		this.tokenType = tokenType;
+		this.value = value;
+		this.issuedAt = issuedAt;
+		this.expiresAt = issuedAt.plus(lifetime);
+		Duration halfLifetime = lifetime.dividedBy(2);
+		this.usableUntil = expiresAt.minus(halfLifetime.compareTo(EXPIRY_SKEW) < 0 ? halfLifetime : EXPIRY_SKEW);
+	}
+
+	String getTokenType() {
+		return tokenType;
+	}
+
+	String getValue() {
+		return value;
+	}
+
+	Instant getExpiresAt() {
+		return expiresAt;
+	}
+
+	boolean isExpired(Instant now) {
+		return !now.isBefore(usableUntil);
+	}
+
+	/**
+	 * @return when a replacement should be requested: after 80% of the lifetime,
+	 *         so the refresh has time to complete before this token expires
+	 */
+	Instant getRefreshAt() {
+		return issuedAt.plus(Duration.between(issuedAt, expiresAt).multipliedBy(4).dividedBy(5));
+	}
+}
@@ -0,0 +1,170 @@
+package com.delinea.secrets.jenkins.client;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.delinea.secrets.jenkins.metrics.SecretServerMetrics;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import hudson.model.Computer;
+import jenkins.util.Timer;
+
+/**
+ * Caches access tokens per service account and base URL so that a secret
+ * fetch costs one round trip rather than two. Tokens that are in use are
+ * refreshed in the background before they expire; tokens of accounts that
+ * have gone idle are simply allowed to lapse, and are dropped along with
+ * their client, or at the latest once they have not been asked for as long as
+ * an idle client is kept.
+ * <p>
+ * Refreshes run on Jenkins' own {@link Computer#threadPoolForRemoting}, so
+ * no threads of this cache outlive Jenkins.
+ */
+public final class AccessTokenCache {
+	private static final Logger LOGGER = Logger.getLogger(AccessTokenCache.class.getName());
+
+	private static final AccessTokenCache INSTANCE = new AccessTokenCache();
+
+	private final ConcurrentMap<ClientKey, Slot> tokens = Caffeine.newBuilder()
+			.maximumSize(SecretServerClientRegistry.MAX_CLIENTS)
+			.expireAfterAccess(SecretServerClientRegistry.IDLE_TIMEOUT)
+			.<ClientKey, Slot>build().asMap();
+
+	private AccessTokenCache() {
+	}
+
+	public static AccessTokenCache get() {
+		return INSTANCE;
+	}
+
+	/**
+	 * Returns a valid token for this account, requesting one if none is cached or
+	 * the cached one has expired. Concurrent callers share a single request. A
+	 * token this call requested is returned as it is, even if it is already
+	 * close to expiring, rather than requested again.
+	 */
+	AccessToken getToken(ClientKey key, TokenEndpoint endpoint) {
+		boolean requested = false;
+		while (true) {
+			Slot slot = tokens.get(key);
+			if (slot == null) {
+				Slot created = new Slot();
+				slot = tokens.putIfAbsent(key, created);
+				if (slot == null) {
+					slot = created;
+					requested = true;
+					SecretServerMetrics.get().cacheMiss(SecretServerMetrics.Cache.ACCESS_TOKEN);
+					load(key, endpoint, created);
+				}
+			}
+			slot.used = true;
+			AccessToken token;
+			try {
+				token = slot.token.join();
+			} catch (CompletionException e) {
+				tokens.remove(key, slot);
+				if (e.getCause() instanceof RuntimeException) {
+					throw (RuntimeException) e.getCause();
+				}
+				throw e;
+			}
+			if (requested || !token.isExpired(Instant.now())) {
+				if (!requested) {
+					SecretServerMetrics.get().cacheHit(SecretServerMetrics.Cache.ACCESS_TOKEN);
+				}
+				return token;
+			}
+			tokens.remove(key, slot);
+		}
+	}
+
+	/**
+	 * Like {@link #getToken(ClientKey, TokenEndpoint)}, but a token that has to
+	 * be requested is requested on {@link SecretFetchExecutor} rather than on the
+	 * calling thread.
+	 */
+	CompletableFuture<AccessToken> getTokenAsync(ClientKey key, TokenEndpoint endpoint) {
+		Slot slot = tokens.get(key);
+		AccessToken token = slot == null ? null : slot.obtained();
+		if (token != null && !token.isExpired(Instant.now())) {
+			slot.used = true;
+			SecretServerMetrics.get().cacheHit(SecretServerMetrics.Cache.ACCESS_TOKEN);
+			return CompletableFuture.completedFuture(token);
+		}
+		return CompletableFuture.supplyAsync(() -> getToken(key, endpoint), SecretFetchExecutor.get());
+	}
+
+	/**
+	 * Drops this token if it is still the cached one, typically because Secret
+	 * Server rejected it with a 401.
+	 */
+	void invalidate(ClientKey key, AccessToken token) {
+		Slot slot = tokens.get(key);
+		if (slot != null && slot.obtained() == token) {
+			tokens.remove(key, slot);
+		}
+	}
+
+	/**
+	 * Drops the cached token of this account, as its client has been evicted.
+	 */
+	void invalidate(ClientKey key) {
+		tokens.remove(key);
+	}
+
+	public void invalidateAll() {
+		tokens.clear();
+	}
+
+	private void load(ClientKey key, TokenEndpoint endpoint, Slot slot) {
+		try {
+			AccessToken token = endpoint.requestToken();
+			LOGGER.fine(() -> "[AccessTokenCache] Obtained token for " + key + ", expires at " + token.getExpiresAt());
+			slot.token.complete(token);
+			scheduleRefresh(key, endpoint, slot, token);
+		} catch (RuntimeException e) {
+			slot.token.completeExceptionally(e);
+		}
+	}
+
+	private void scheduleRefresh(ClientKey key, TokenEndpoint endpoint, Slot slot, AccessToken token) {
+		long delay = Math.max(0, Duration.between(Instant.now(), token.getRefreshAt()).toMillis());
+		Timer.get().schedule(() -> Computer.threadPoolForRemoting.execute(() -> refresh(key, endpoint, slot)),
+				delay, TimeUnit.MILLISECONDS);
+	}
+
+	private void refresh(ClientKey key, TokenEndpoint endpoint, Slot current) {
+		if (tokens.get(key) != current || !current.used) {
+			return;
+		}
+		Slot next = new Slot();
+		try {
+			AccessToken token = endpoint.requestToken();
+			next.token.complete(token);
+			if (tokens.replace(key, current, next)) {
+				LOGGER.fine(() -> "[AccessTokenCache] Refreshed token for " + key);
+				scheduleRefresh(key, endpoint, next, token);
+			}
+		} catch (RuntimeException e) {
+			// keep serving the current token; it is re-requested in the foreground once it expires
+			LOGGER.log(Level.FINE, "[AccessTokenCache] Background token refresh failed for " + key, e);
+		}
+	}
+
+	private static final class Slot {
+		final CompletableFuture<AccessToken> token = new CompletableFuture<>();
+		/** Whether the token has been handed out since it was obtained. */
+		volatile boolean used;
+
+		/** @return the token, or {@code null} if it is still being requested or the request failed */
+		AccessToken obtained() {
+			return token.isDone() && !token.isCompletedExceptionally() ? token.join() : null;
+		}
+	}
+}
@@ -0,0 +1,45 @@
+package com.delinea.secrets.jenkins.client;
+
+import java.io.IOException;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRequest;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.client.ClientHttpRequestExecution;
+import org.springframework.http.client.ClientHttpRequestInterceptor;
+import org.springframework.http.client.ClientHttpResponse;
+
+/**
+ * Authenticates Secret Server requests with a token from
+ * {@link AccessTokenCache}. A request rejected with a 401 invalidates the token
+ * and is retried once with a fresh one.
+ */
+final class AccessTokenInterceptor implements ClientHttpRequestInterceptor {
+	private final ClientKey key;
+	private final TokenEndpoint endpoint;
+
+	AccessTokenInterceptor(ClientKey key, TokenEndpoint endpoint) {
+		this.key = key;
+		this.endpoint = endpoint;
+	}
+
+	@Override
+	public ClientHttpResponse intercept(HttpRequest request, byte[] body, ClientHttpRequestExecution execution)
+			throws IOException {
+		AccessTokenCache tokens = AccessTokenCache.get();
+		AccessToken token = tokens.getToken(key, endpoint);
+		authorize(request, token);
+		ClientHttpResponse response = execution.execute(request, body);
+		if (response.getStatusCode().value() != HttpStatus.UNAUTHORIZED.value()) {
+			return response;
+		}
+		response.close();
+		tokens.invalidate(key, token);
+		authorize(request, tokens.getToken(key, endpoint));
+		return execution.execute(request, body);
+	}
+
+	private static void authorize(HttpRequest request, AccessToken token) {
+		request.getHeaders().set(HttpHeaders.AUTHORIZATION, token.getTokenType() + " " + token.getValue());
+	}
+}
@@ -0,0 +1,96 @@
+package com.delinea.secrets.jenkins.client;
+
+import java.time.Duration;
+import java.time.Instant;
+
+/**
+ * Tracks the health of one Secret Server host. After a number of consecutive
+ * transient failures the breaker opens and calls fail immediately instead of
+ * waiting on a server that is down. Once the open period has passed, a single
+ * trial call is let through: if it succeeds the breaker closes again,
+ * otherwise it stays open for another period.
+ */
+public final class CircuitBreaker {
+	public enum State {
+		CLOSED, OPEN, HALF_OPEN
+	}
+
+	private final String host;
+	private State state = State.CLOSED;
+	private int consecutiveFailures;
+	private Instant openedAt;
+	private boolean trialInFlight;
+
+	CircuitBreaker(String host) {
+		this.host = host;
+	}
+
+	/**
+	 * @param openFor - How long the breaker stays open before letting a trial
+	 *                call through.
+	 * @throws CircuitBreakerOpenException if the call may not be made
+	 */
+	synchronized void acquire(Duration openFor) throws CircuitBreakerOpenException {
+		if (state == State.OPEN && !Instant.now().isBefore(openedAt.plus(openFor))) {
+			state = State.HALF_OPEN;
+			trialInFlight = false;
+		}
+		if (state == State.OPEN) {
+			throw new CircuitBreakerOpenException("Secret Server " + host + " failed " + consecutiveFailures
+					+ " times in a row; not contacting it until " + openedAt.plus(openFor));
+		}
+		if (state == State.HALF_OPEN && trialInFlight) {
+			throw new CircuitBreakerOpenException("Secret Server " + host + " failed " + consecutiveFailures
+					+ " times in a row; waiting for a trial request to it to complete");
+		}
+		if (state == State.HALF_OPEN) {
+			trialInFlight = true;
+		}
+	}
+
+	synchronized void onSuccess() {
+		state = State.CLOSED;
+		consecutiveFailures = 0;
+		openedAt = null;
+		trialInFlight = false;
+	}
+
+	/**
+	 * Called when a call ends without an outcome, such as when it is cancelled,
+	 * so that a trial call does not hold the breaker half open.
+	 */
+	synchronized void onAbandoned() {
+		trialInFlight = false;
+	}
+
+	/**
+	 * @param threshold - How many consecutive failures open the breaker.
+	 */
+	synchronized void onFailure(int threshold) {
+		consecutiveFailures++;
+		if (state == State.HALF_OPEN || consecutiveFailures >= threshold) {
+			state = State.OPEN;
+			openedAt = Instant.now();
+			trialInFlight = false;
+		}
+	}
+
+	public String getHost() {
+		return host;
+	}
+
+	public synchronized State getState() {
+		return state;
+	}
+
+	public synchronized int getConsecutiveFailures() {
+		return consecutiveFailures;
+	}
+
+	/**
+	 * @return when the breaker last opened, or {@code null} if it is closed
+	 */
+	public synchronized Instant getOpenedAt() {
+		return openedAt;
+	}
+}
@@ -0,0 +1,15 @@
+package com.delinea.secrets.jenkins.client;
+
+import java.io.IOException;
+
+/**
+ * Thrown instead of contacting a Secret Server whose {@link CircuitBreaker} is
+ * open.
+ */
+public final class CircuitBreakerOpenException extends IOException {
+	private static final long serialVersionUID = 1L;
+
+	CircuitBreakerOpenException(String message) {
+		super(message);
+	}
+}
@@ -0,0 +1,95 @@
+package com.delinea.secrets.jenkins.client;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+
+import org.apache.commons.lang3.StringUtils;
+
+import com.delinea.secrets.jenkins.util.DelineaProxyUtil;
+
+/**
+ * Identifies a Secret Server client by everything that goes into building it:
+ * the base URL, the service account and the effective proxy. Passwords only
+ * take part as a digest so that keys can be logged and kept around safely.
+ */
+final class ClientKey {
+	private final String baseUrl;
+	private final String username;
+	private final String passwordDigest;
+	private final Map<String, String> proxy;
+
+	private ClientKey(String baseUrl, String username, String passwordDigest, Map<String, String> proxy) {
+		this.baseUrl = baseUrl;
+		this.username = username;
+		this.passwordDigest = passwordDigest;
+		this.proxy = proxy;
+	}
+
+	static ClientKey of(String baseUrl, String username, String password, Map<String, String> proxyConfig) {
+		Map<String, String> proxy = new TreeMap<>(proxyConfig);
+		proxy.computeIfPresent(DelineaProxyUtil.PROXY_PASSWORD_PROPERTY, (k, v) -> digest(v));
+		return new ClientKey(StringUtils.removeEnd(StringUtils.trimToEmpty(baseUrl), "/"),
+				StringUtils.defaultString(username), digest(password), Collections.unmodifiableMap(proxy));
+	}
+
+	String getBaseUrl() {
+		return baseUrl;
+	}
+
+	String getUsername() {
+		return username;
+	}
+
+	String getPasswordDigest() {
+		return passwordDigest;
+	}
+
+	Map<String, String> getProxy() {
+		return proxy;
+	}
+
+	static String digest(String value) {
+		try {
+			MessageDigest md = MessageDigest.getInstance("SHA-256");
+			byte[] hash = md.digest(StringUtils.defaultString(value).getBytes(StandardCharsets.UTF_8));
+			StringBuilder sb = new StringBuilder(hash.length * 2);
+			for (byte b : hash) {
+				sb.append(String.format("%02x", b));
+			}
+			return sb.toString();
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException("SHA-256 is not available", e);
+		}
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if (this == o) {
+			return true;
+		}
+		if (!(o instanceof ClientKey)) {
+			return false;
+		}
+		ClientKey other = (ClientKey) o;
+		return baseUrl.equals(other.baseUrl) && username.equals(other.username)
+				&& passwordDigest.equals(other.passwordDigest) && proxy.equals(other.proxy);
+	}
+
+	@Override
+	public int hashCode() {
+		return Objects.hash(baseUrl, username, passwordDigest, proxy);
+	}
+
+	@Override
+	public String toString() {
+		return username + "@" + baseUrl + (proxy.containsKey(DelineaProxyUtil.PROXY_HOST_PROPERTY)
+				? " via " + proxy.get(DelineaProxyUtil.PROXY_HOST_PROPERTY) + ":"
+						+ proxy.get(DelineaProxyUtil.PROXY_PORT_PROPERTY)
+				: "");
+	}
+}
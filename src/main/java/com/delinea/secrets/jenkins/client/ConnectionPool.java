@@ -0,0 +1,142 @@
+package com.delinea.secrets.jenkins.client;
+
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hc.client5.http.config.ConnectionConfig;
+import org.apache.hc.client5.http.config.RequestConfig;
+import org.apache.hc.client5.http.config.TlsConfig;
+import org.apache.hc.client5.http.impl.async.CloseableHttpAsyncClient;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManagerBuilder;
+import org.apache.hc.client5.http.impl.nio.PoolingAsyncClientConnectionManager;
+import org.apache.hc.client5.http.impl.nio.PoolingAsyncClientConnectionManagerBuilder;
+import org.apache.hc.core5.http2.HttpVersionPolicy;
+import org.apache.hc.core5.pool.PoolConcurrencyPolicy;
+import org.apache.hc.core5.pool.PoolReusePolicy;
+import org.apache.hc.core5.util.TimeValue;
+import org.apache.hc.core5.util.Timeout;
+
+import jenkins.util.Timer;
+
+/**
+ * The keep-alive connections to Secret Server shared by every
+ * {@link SecretServerClient}. Connections are pooled per route, that is per
+ * target host and proxy, so the TCP and TLS handshakes to a server are paid
+ * once and then reused by all builds and credentials, and survive the clients
+ * being replaced when the configuration is saved. Idle and expired
+ * connections are closed in the background.
+ * <p>
+ * Asynchronous requests have a pool of their own behind a single client,
+ * started on first use, which negotiates HTTP/2 with servers that offer it
+ * and otherwise keeps HTTP/1.1 connections alive like the blocking pool.
+ */
+public final class ConnectionPool {
+	/** How long a pooled connection may sit idle before it is checked before reuse. */
+	private static final TimeValue VALIDATE_AFTER_INACTIVITY = TimeValue.ofSeconds(2);
+
+	private static final ConnectionPool INSTANCE = new ConnectionPool();
+
+	private final PoolingHttpClientConnectionManager manager = PoolingHttpClientConnectionManagerBuilder.create()
+			.setPoolConcurrencyPolicy(PoolConcurrencyPolicy.STRICT)
+			.setConnPoolPolicy(PoolReusePolicy.LIFO)
+			.build();
+	private final PoolingAsyncClientConnectionManager asyncManager = PoolingAsyncClientConnectionManagerBuilder
+			.create()
+			.setPoolConcurrencyPolicy(PoolConcurrencyPolicy.STRICT)
+			.setConnPoolPolicy(PoolReusePolicy.LIFO)
+			.setDefaultTlsConfig(TlsConfig.custom().setVersionPolicy(HttpVersionPolicy.NEGOTIATE).build())
+			.build();
+	private volatile CloseableHttpAsyncClient asyncClient;
+	private volatile RequestConfig requestConfig = RequestConfig.DEFAULT;
+	private volatile TimeValue idleTimeout = TimeValue.ofSeconds(60);
+	private ScheduledFuture<?> evictor;
+
+	private ConnectionPool() {
+		configure(50, 10, 60, 30);
+	}
+
+	public static ConnectionPool get() {
+		return INSTANCE;
+	}
+
+	/**
+	 * Applies the settings from the global configuration to the pool and to
+	 * clients created from now on.
+	 *
+	 * @param maxConnections         - Connections open at most, to all Secret
+	 *                               Servers together.
+	 * @param maxConnectionsPerRoute - Connections open at most to one Secret
+	 *                               Server through one proxy.
+	 * @param idleSeconds            - How long a connection may sit unused in the
+	 *                               pool before it is closed.
+	 * @param requestTimeoutSeconds  - How long a single request may wait to
+	 *                               connect, for a pooled connection or for a
+	 *                               response.
+	 */
+	public synchronized void configure(int maxConnections, int maxConnectionsPerRoute, int idleSeconds,
+			int requestTimeoutSeconds) {
+		int perRoute = Math.max(1, maxConnectionsPerRoute);
+		manager.setMaxTotal(Math.max(perRoute, maxConnections));
+		manager.setDefaultMaxPerRoute(perRoute);
+		asyncManager.setMaxTotal(Math.max(perRoute, maxConnections));
+		asyncManager.setDefaultMaxPerRoute(perRoute);
+
+		Timeout timeout = Timeout.ofSeconds(Math.max(1, requestTimeoutSeconds));
+		ConnectionConfig connectionConfig = ConnectionConfig.custom()
+				.setConnectTimeout(timeout)
+				.setSocketTimeout(timeout)
+				.setValidateAfterInactivity(VALIDATE_AFTER_INACTIVITY)
+				.build();
+		manager.setDefaultConnectionConfig(connectionConfig);
+		asyncManager.setDefaultConnectionConfig(connectionConfig);
+		requestConfig = RequestConfig.custom()
+				.setConnectionRequestTimeout(timeout)
+				.setResponseTimeout(timeout)
+				.build();
+
+		idleTimeout = TimeValue.ofSeconds(Math.max(1, idleSeconds));
+		if (evictor != null) {
+			evictor.cancel(false);
+		}
+		// check a few times per idle period, so connections close soon after it ends
+		long period = Math.max(1, idleTimeout.toSeconds() / 4);
+		evictor = Timer.get().scheduleWithFixedDelay(this::evict, period, period, TimeUnit.SECONDS);
+	}
+
+	/**
+	 * @return the pool, which clients must not close; see
+	 *         {@link org.apache.hc.client5.http.impl.classic.HttpClientBuilder#setConnectionManagerShared(boolean)}
+	 */
+	PoolingHttpClientConnectionManager getManager() {
+		return manager;
+	}
+
+	/**
+	 * @return the asynchronous client, shared by every Secret Server and proxy
+	 */
+	CloseableHttpAsyncClient getAsyncClient() {
+		CloseableHttpAsyncClient client = asyncClient;
+		if (client == null) {
+			synchronized (this) {
+				client = asyncClient;
+				if (client == null) {
+					client = HttpClientFactory.createAsync(asyncManager);
+					asyncClient = client;
+				}
+			}
+		}
+		return client;
+	}
+
+	RequestConfig getRequestConfig() {
+		return requestConfig;
+	}
+
+	private void evict() {
+		manager.closeExpired();
+		manager.closeIdle(idleTimeout);
+		asyncManager.closeExpired();
+		asyncManager.closeIdle(idleTimeout);
+	}
+}
@@ -0,0 +1,271 @@
+package com.delinea.secrets.jenkins.client;
+
+import java.io.IOException;
+import java.net.URI;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.logging.Logger;
+
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.http.converter.HttpMessageConversionException;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.client.RestClientResponseException;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+
+/**
+ * Retries transient Secret Server failures and stops calling hosts that keep
+ * failing. A failure is transient if it is a network error, a 5xx response or
+ * a 429; anything else, such as a 403, is returned to the caller at once.
+ * Retries back off exponentially with full jitter and stop when the deadline
+ * for the call would be passed. Each host has a {@link CircuitBreaker}.
+ */
+public final class FaultTolerance {
+	private static final Logger LOGGER = Logger.getLogger(FaultTolerance.class.getName());
+
+	private static final FaultTolerance INSTANCE = new FaultTolerance();
+
+	private volatile Settings settings = new Settings(3, 200, 60, 5, 30);
+	private final ConcurrentMap<String, CircuitBreaker> breakers = new ConcurrentHashMap<>();
+
+	private FaultTolerance() {
+	}
+
+	public static FaultTolerance get() {
+		return INSTANCE;
+	}
+
+	/**
+	 * One attempt at a call; failures are thrown as runtime exceptions, as
+	 * Spring's {@code RestTemplate} does.
+	 */
+	public interface Attempt<T> {
+		T run() throws InterruptedException;
+	}
+
+	/**
+	 * Applies the settings from the global configuration.
+	 *
+	 * @param maxAttempts          - Attempts per call, at least 1.
+	 * @param initialBackoffMillis - The longest wait before the first retry;
+	 *                             doubled for each later one.
+	 * @param deadlineSeconds      - How long a call may take in total, retries
+	 *                             included.
+	 * @param breakerThreshold     - Consecutive failures that open a host's
+	 *                             breaker, 0 to never open it.
+	 * @param breakerOpenSeconds   - How long an open breaker fails calls before
+	 *                             trying the host again.
+	 */
+	public void configure(int maxAttempts, int initialBackoffMillis, int deadlineSeconds, int breakerThreshold,
+			int breakerOpenSeconds) {
+		settings = new Settings(maxAttempts, initialBackoffMillis, deadlineSeconds, breakerThreshold,
+				breakerOpenSeconds);
+	}
+
+	/**
+	 * @return the breaker of every host called so far, by host name
+	 */
+	public List<CircuitBreaker> getCircuitBreakers() {
+		List<CircuitBreaker> list = new ArrayList<>(breakers.values());
+		list.sort(Comparator.comparing(CircuitBreaker::getHost));
+		return list;
+	}
+
+	/**
+	 * Makes a call to the Secret Server at {@code baseUrl}, retrying transient
+	 * failures.
+	 *
+	 * @throws ResourceAccessException caused by a
+	 *                                 {@link CircuitBreakerOpenException} if the
+	 *                                 host's breaker is open
+	 */
+	public <T> T call(String baseUrl, Attempt<T> attempt) throws InterruptedException {
+		Settings current = settings;
+		CircuitBreaker breaker = breaker(baseUrl);
+		long deadline = System.nanoTime() + current.deadline.toNanos();
+		for (int attemptNumber = 1;; attemptNumber++) {
+			if (current.breakerThreshold > 0) {
+				try {
+					breaker.acquire(current.breakerOpen);
+				} catch (CircuitBreakerOpenException e) {
+					throw new ResourceAccessException(e.getMessage(), e);
+				}
+			}
+			try {
+				T result = attempt.run();
+				breaker.onSuccess();
+				return result;
+			} catch (InterruptedException e) {
+				breaker.onAbandoned();
+				throw e;
+			} catch (RuntimeException e) {
+				if (!isTransient(e)) {
+					settle(breaker, e);
+					throw e;
+				}
+				breaker.onFailure(current.breakerThreshold > 0 ? current.breakerThreshold : Integer.MAX_VALUE);
+				if (attemptNumber >= current.maxAttempts) {
+					throw e;
+				}
+				long backoff = backoffNanos(current, attemptNumber);
+				if (System.nanoTime() + backoff >= deadline) {
+					throw e;
+				}
+				int next = attemptNumber + 1;
+				LOGGER.fine(() -> "[FaultTolerance] Retrying call to " + breaker.getHost() + " (attempt " + next
+						+ ") after: " + e);
+				TimeUnit.NANOSECONDS.sleep(backoff);
+			}
+		}
+	}
+
+	/**
+	 * Like {@link #call(String, Attempt)}, but without blocking: retries are
+	 * scheduled on {@link SecretFetchExecutor} after their backoff. Completing or
+	 * cancelling the returned future, for instance through
+	 * {@link CompletableFuture#orTimeout}, cancels the attempt in progress and
+	 * any further retries.
+	 */
+	public <T> CompletableFuture<T> callAsync(String baseUrl, Supplier<CompletableFuture<T>> attempt) {
+		Settings current = settings;
+		CompletableFuture<T> result = new CompletableFuture<>();
+		attemptAsync(current, breaker(baseUrl), attempt, 1, System.nanoTime() + current.deadline.toNanos(), result);
+		return result;
+	}
+
+	private <T> void attemptAsync(Settings current, CircuitBreaker breaker, Supplier<CompletableFuture<T>> attempt,
+			int attemptNumber, long deadline, CompletableFuture<T> result) {
+		if (result.isDone()) {
+			return;
+		}
+		if (current.breakerThreshold > 0) {
+			try {
+				breaker.acquire(current.breakerOpen);
+			} catch (CircuitBreakerOpenException e) {
+				result.completeExceptionally(new ResourceAccessException(e.getMessage(), e));
+				return;
+			}
+		}
+		CompletableFuture<T> call;
+		try {
+			call = attempt.get();
+		} catch (RuntimeException e) {
+			call = CompletableFuture.failedFuture(e);
+		}
+		CompletableFuture<T> inProgress = call;
+		result.whenComplete((value, failure) -> inProgress.cancel(true));
+		inProgress.whenComplete((value, failure) -> {
+			if (failure == null) {
+				breaker.onSuccess();
+				result.complete(value);
+				return;
+			}
+			Throwable cause = failure instanceof CompletionException && failure.getCause() != null
+					? failure.getCause()
+					: failure;
+			if (result.isDone() || inProgress.isCancelled()) {
+				breaker.onAbandoned();
+				result.completeExceptionally(cause);
+				return;
+			}
+			if (!isTransient(cause)) {
+				settle(breaker, cause);
+				result.completeExceptionally(cause);
+				return;
+			}
+			breaker.onFailure(current.breakerThreshold > 0 ? current.breakerThreshold : Integer.MAX_VALUE);
+			long backoff = backoffNanos(current, attemptNumber);
+			if (attemptNumber >= current.maxAttempts || System.nanoTime() + backoff >= deadline) {
+				result.completeExceptionally(cause);
+				return;
+			}
+			LOGGER.fine(() -> "[FaultTolerance] Retrying call to " + breaker.getHost() + " (attempt "
+					+ (attemptNumber + 1) + ") after: " + cause);
+			CompletableFuture.delayedExecutor(backoff, TimeUnit.NANOSECONDS, SecretFetchExecutor.get())
+					.execute(() -> attemptAsync(current, breaker, attempt, attemptNumber + 1, deadline, result));
+		});
+	}
+
+	private CircuitBreaker breaker(String baseUrl) {
+		return breakers.computeIfAbsent(host(baseUrl), CircuitBreaker::new);
+	}
+
+	/** Full jitter: uniformly random up to the exponential backoff for this attempt. */
+	private static long backoffNanos(Settings settings, int attemptNumber) {
+		long ceiling = settings.initialBackoff.toNanos() << Math.min(attemptNumber - 1, 20);
+		return ceiling <= 0 ? 0 : ThreadLocalRandom.current().nextLong(ceiling + 1);
+	}
+
+	/**
+	 * Records a failure that is not retried. Only a 4xx response shows that the
+	 * server is up; other failures, such as a response that cannot be read or a
+	 * request that was never sent, say nothing about it either way.
+	 */
+	private static void settle(CircuitBreaker breaker, Throwable failure) {
+		for (Throwable t = failure; t != null; t = t.getCause()) {
+			if (t instanceof RestClientResponseException
+					&& ((RestClientResponseException) t).getStatusCode().is4xxClientError()) {
+				breaker.onSuccess();
+				return;
+			}
+		}
+		breaker.onAbandoned();
+	}
+
+	static boolean isTransient(Throwable failure) {
+		for (Throwable t = failure; t != null; t = t.getCause()) {
+			if (t instanceof JsonProcessingException || t instanceof HttpMessageConversionException) {
+				// a response that cannot be read will not read any better the next time
+				return false;
+			}
+			if (t instanceof RateLimitedException) {
+				// retrying would only queue up again behind the same requests
+				return false;
+			}
+			if (t instanceof RestClientResponseException) {
+				int status = ((RestClientResponseException) t).getStatusCode().value();
+				return status >= 500 || status == 429;
+			}
+			if (t instanceof IOException) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static String host(String baseUrl) {
+		try {
+			String host = URI.create(StringUtils.trimToEmpty(baseUrl)).getHost();
+			return StringUtils.defaultString(host, StringUtils.defaultString(baseUrl)).toLowerCase(Locale.ROOT);
+		} catch (IllegalArgumentException e) {
+			return StringUtils.defaultString(baseUrl).toLowerCase(Locale.ROOT);
+		}
+	}
+
+	private static final class Settings {
+		private final int maxAttempts;
+		private final Duration initialBackoff;
+		private final Duration deadline;
+		private final int breakerThreshold;
+		private final Duration breakerOpen;
+
+		Settings(int maxAttempts, int initialBackoffMillis, int deadlineSeconds, int breakerThreshold,
+				int breakerOpenSeconds) {
+			this.maxAttempts = Math.max(1, maxAttempts);
+			this.initialBackoff = Duration.ofMillis(Math.max(0, initialBackoffMillis));
+			this.deadline = Duration.ofSeconds(Math.max(1, deadlineSeconds));
+			this.breakerThreshold = Math.max(0, breakerThreshold);
+			this.breakerOpen = Duration.ofSeconds(Math.max(1, breakerOpenSeconds));
+		}
+	}
+}
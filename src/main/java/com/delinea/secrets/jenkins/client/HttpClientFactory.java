@@ -0,0 +1,140 @@
+package com.delinea.secrets.jenkins.client;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Map;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.math.NumberUtils;
+import org.apache.hc.client5.http.auth.AuthScope;
+import org.apache.hc.client5.http.auth.UsernamePasswordCredentials;
+import org.apache.hc.client5.http.classic.ExecChain;
+import org.apache.hc.client5.http.impl.DefaultSchemePortResolver;
+import org.apache.hc.client5.http.impl.async.CloseableHttpAsyncClient;
+import org.apache.hc.client5.http.impl.async.HttpAsyncClients;
+import org.apache.hc.client5.http.impl.auth.BasicCredentialsProvider;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.impl.classic.HttpClientBuilder;
+import org.apache.hc.client5.http.impl.classic.HttpClients;
+import org.apache.hc.client5.http.impl.nio.PoolingAsyncClientConnectionManager;
+import org.apache.hc.client5.http.impl.routing.DefaultRoutePlanner;
+import org.apache.hc.client5.http.protocol.HttpClientContext;
+import org.apache.hc.core5.http.ClassicHttpRequest;
+import org.apache.hc.core5.http.ClassicHttpResponse;
+import org.apache.hc.core5.http.Header;
+import org.apache.hc.core5.http.HttpException;
+import org.apache.hc.core5.http.HttpHeaders;
+import org.apache.hc.core5.http.HttpHost;
+import org.apache.hc.core5.http.protocol.HttpContext;
+
+import com.delinea.secrets.jenkins.util.DelineaProxyUtil;
+
+/**
+ * Builds the Apache HTTP clients the plugin uses for its own calls to Secret
+ * Server, honouring the proxy resolved by {@link DelineaProxyUtil}. Every
+ * client draws its connections from the shared {@link ConnectionPool}, and
+ * blocking requests are paced by the {@link RateLimiter}. The clients' own
+ * retries are disabled, since {@link FaultTolerance} retries within the
+ * deadline and each of its attempts goes through the rate limiter.
+ * <p>
+ * The asynchronous client is a single instance for all Secret Servers, as
+ * each one runs its own I/O threads; the proxy is chosen per request from the
+ * context built by {@link #createAsyncContext(Map)}.
+ */
+final class HttpClientFactory {
+	private static final String PROXY_ATTRIBUTE = HttpClientFactory.class.getName() + ".proxy";
+	private static final String RATE_LIMIT = "rate-limit";
+
+	private HttpClientFactory() {
+	}
+
+	static CloseableHttpClient create(Map<String, String> proxyConfig) {
+		ConnectionPool pool = ConnectionPool.get();
+		HttpClientBuilder builder = HttpClients.custom()
+				.setConnectionManager(pool.getManager())
+				.setConnectionManagerShared(true)
+				.setDefaultRequestConfig(pool.getRequestConfig())
+				.disableAutomaticRetries()
+				.addExecInterceptorFirst(RATE_LIMIT, HttpClientFactory::rateLimited);
+		HttpHost proxy = proxy(proxyConfig);
+		if (proxy != null) {
+			builder.setProxy(proxy);
+			BasicCredentialsProvider credentialsProvider = proxyCredentials(proxy, proxyConfig);
+			if (credentialsProvider != null) {
+				builder.setDefaultCredentialsProvider(credentialsProvider);
+			}
+		}
+		return builder.build();
+	}
+
+	static CloseableHttpAsyncClient createAsync(PoolingAsyncClientConnectionManager manager) {
+		CloseableHttpAsyncClient client = HttpAsyncClients.custom()
+				.setConnectionManager(manager)
+				.setConnectionManagerShared(true)
+				.disableAutomaticRetries()
+				.setRoutePlanner(new DefaultRoutePlanner(DefaultSchemePortResolver.INSTANCE) {
+					@Override
+					protected HttpHost determineProxy(HttpHost target, HttpContext context) {
+						return (HttpHost) context.getAttribute(PROXY_ATTRIBUTE);
+					}
+				})
+				.build();
+		client.start();
+		return client;
+	}
+
+	/**
+	 * @return a new context for one request through the asynchronous client
+	 */
+	static HttpClientContext createAsyncContext(Map<String, String> proxyConfig) {
+		HttpClientContext context = HttpClientContext.create();
+		context.setRequestConfig(ConnectionPool.get().getRequestConfig());
+		HttpHost proxy = proxy(proxyConfig);
+		if (proxy != null) {
+			context.setAttribute(PROXY_ATTRIBUTE, proxy);
+			BasicCredentialsProvider credentialsProvider = proxyCredentials(proxy, proxyConfig);
+			if (credentialsProvider != null) {
+				context.setCredentialsProvider(credentialsProvider);
+			}
+		}
+		return context;
+	}
+
+	/**
+	 * Waits for the {@link RateLimiter} before each request, token requests
+	 * included, and passes it the response.
+	 */
+	private static ClassicHttpResponse rateLimited(ClassicHttpRequest request, ExecChain.Scope scope,
+			ExecChain chain) throws IOException, HttpException {
+		String host = scope.route.getTargetHost().getHostName();
+		try {
+			RateLimiter.get().acquire(host);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting to contact " + host);
+		}
+		ClassicHttpResponse response = chain.proceed(request, scope);
+		Header retryAfter = response.getFirstHeader(HttpHeaders.RETRY_AFTER);
+		RateLimiter.get().onResponse(host, response.getCode(), retryAfter == null ? null : retryAfter.getValue());
+		return response;
+	}
+
+	private static HttpHost proxy(Map<String, String> proxyConfig) {
+		String proxyHost = proxyConfig.get(DelineaProxyUtil.PROXY_HOST_PROPERTY);
+		if (StringUtils.isBlank(proxyHost)) {
+			return null;
+		}
+		return new HttpHost(proxyHost, NumberUtils.toInt(proxyConfig.get(DelineaProxyUtil.PROXY_PORT_PROPERTY), -1));
+	}
+
+	private static BasicCredentialsProvider proxyCredentials(HttpHost proxy, Map<String, String> proxyConfig) {
+		String proxyUsername = proxyConfig.get(DelineaProxyUtil.PROXY_USERNAME_PROPERTY);
+		if (StringUtils.isBlank(proxyUsername)) {
+			return null;
+		}
+		BasicCredentialsProvider credentialsProvider = new BasicCredentialsProvider();
+		credentialsProvider.setCredentials(new AuthScope(proxy), new UsernamePasswordCredentials(proxyUsername,
+				StringUtils.defaultString(proxyConfig.get(DelineaProxyUtil.PROXY_PASSWORD_PROPERTY)).toCharArray()));
+		return credentialsProvider;
+	}
+}
@@ -0,0 +1,541 @@
+package com.delinea.secrets.jenkins.client;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.crypto.Cipher;
+import javax.crypto.Mac;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+import jenkins.model.Jenkins;
+import jenkins.security.ConfidentialKey;
+import jenkins.security.ConfidentialStore;
+
+/**
+ * An optional copy of {@link SecretValueCache} on disk, so that secrets
+ * fetched before a restart can be served straight after it instead of every
+ * queued build fetching them again at once.
+ * <p>
+ * Entries are appended to a log under {@code JENKINS_HOME}. Each record holds
+ * in the clear the time the secret was fetched, when it expires and an HMAC of
+ * its key, and the field values encrypted with AES-GCM; the clear part is
+ * authenticated along with the ciphertext, and both keys are kept in Jenkins'
+ * {@link ConfidentialStore}. Records are keyed like the in-memory cache, by base
+ * URL, service account and secret id, so a value is only ever restored for the
+ * account it was fetched as, while the key itself never appears on disk. Since
+ * the key can be matched without decrypting anything, reading the log only
+ * indexes it, and a record is decrypted, straight into {@link SecretBytes},
+ * when it is served.
+ * <p>
+ * A later record for the same key supersedes an earlier one, and the log is
+ * rewritten without superseded and expired records once they make up most of
+ * it. Appends are not forced to disk: a crash may lose the latest records, or
+ * leave one cut short at the end of the log, which is dropped when it is read
+ * back, and those secrets are simply fetched again. The whole log is discarded
+ * whenever the in-memory cache is invalidated, and deleted when persistence is
+ * turned off.
+ */
+public final class PersistentSecretCache {
+	private static final Logger LOGGER = Logger.getLogger(PersistentSecretCache.class.getName());
+
+	/** Logs of earlier versions, which held the key encrypted, are discarded on open. */
+	private static final int MAGIC = 0x44534333; // "DSC3"
+	private static final byte PUT = 1;
+	private static final int DIGEST_LENGTH = 32;
+	/**
+	 * Type, written at, expires at and key digest, which are authenticated but
+	 * not encrypted.
+	 */
+	private static final int HEADER_LENGTH = 1 + 8 + 8 + DIGEST_LENGTH;
+	private static final int NONCE_LENGTH = 12;
+	private static final int TAG_BITS = 128;
+	/** A log smaller than this is never compacted. */
+	private static final long MIN_COMPACT_BYTES = 64 * 1024;
+
+	private static final PersistentSecretCache INSTANCE = new PersistentSecretCache();
+
+	private final CacheKey key = new CacheKey(".key", "AES");
+	private final CacheKey idKey = new CacheKey(".idKey", "HmacSHA256");
+	private final SecureRandom random = new SecureRandom();
+
+	private boolean enabled;
+	/** The latest record of each key, by its digest, once the log has been read. */
+	private Map<String, Record> records;
+	private FileChannel log;
+	private long logBytes;
+	private long liveBytes;
+
+	private PersistentSecretCache() {
+	}
+
+	public static PersistentSecretCache get() {
+		return INSTANCE;
+	}
+
+	/**
+	 * A secret read back from disk, whose snapshot the reader owns.
+	 */
+	static final class Stored {
+		private final SecretSnapshot snapshot;
+		private final long writtenAt;
+
+		Stored(SecretSnapshot snapshot, long writtenAt) {
+			this.snapshot = snapshot;
+			this.writtenAt = writtenAt;
+		}
+
+		SecretSnapshot getSnapshot() {
+			return snapshot;
+		}
+
+		Duration age() {
+			return Duration.ofMillis(Math.max(0, System.currentTimeMillis() - writtenAt));
+		}
+	}
+
+	/**
+	 * Turns persistence on or off. Turning it off deletes the log.
+	 */
+	public synchronized void configure(boolean enabled) {
+		if (this.enabled == enabled) {
+			return;
+		}
+		this.enabled = enabled;
+		if (!enabled) {
+			close();
+			try {
+				Files.deleteIfExists(file());
+			} catch (IOException | RuntimeException e) {
+				LOGGER.log(Level.WARNING, "[PersistentSecretCache] Unable to delete " + file(), e);
+			}
+		}
+	}
+
+	synchronized boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * @param account - The service account the secret was fetched as, identified
+	 *                by its username and password digest.
+	 * @return the secret as last written, or {@code null} if there is none that
+	 *         has not expired
+	 */
+	synchronized Stored read(String baseUrl, String account, String secretId) {
+		if (!open()) {
+			return null;
+		}
+		String digest;
+		try {
+			digest = digest(baseUrl, account, secretId);
+		} catch (IOException | GeneralSecurityException e) {
+			LOGGER.log(Level.FINE, "[PersistentSecretCache] Unable to read secret " + secretId, e);
+			return null;
+		}
+		Record record = records.get(digest);
+		if (record == null || record.isExpired(System.currentTimeMillis())) {
+			return null;
+		}
+		try {
+			return new Stored(decrypt(record.bytes), record.writtenAt);
+		} catch (IOException | GeneralSecurityException e) {
+			// written under another key, or corrupted; drop it
+			LOGGER.log(Level.FINE, "[PersistentSecretCache] Unable to read secret " + secretId, e);
+			records.remove(digest, record);
+			liveBytes -= record.length();
+			return null;
+		}
+	}
+
+	/**
+	 * Appends a secret to the log.
+	 *
+	 * @param account      - The service account the secret was fetched as, as for
+	 *                     {@link #read}.
+	 * @param expiresAfter - How long the secret may be served from now on,
+	 *                     including any stale grace period.
+	 */
+	synchronized void write(String baseUrl, String account, String secretId, SecretSnapshot snapshot,
+			Duration expiresAfter) {
+		if (!open()) {
+			return;
+		}
+		long now = System.currentTimeMillis();
+		try {
+			String digest = digest(baseUrl, account, secretId);
+			Record record = new Record(encrypt(digest, snapshot, now, now + expiresAfter.toMillis()), now,
+					now + expiresAfter.toMillis());
+			append(record);
+			Record previous = records.put(digest, record);
+			liveBytes += record.length() - (previous == null ? 0 : previous.length());
+			if (logBytes > MIN_COMPACT_BYTES && logBytes > 2 * liveBytes) {
+				compact();
+			}
+		} catch (IOException | GeneralSecurityException e) {
+			LOGGER.log(Level.WARNING, "[PersistentSecretCache] Unable to persist secret " + secretId, e);
+		}
+	}
+
+	/**
+	 * Discards every persisted secret.
+	 */
+	synchronized void clear() {
+		if (!enabled) {
+			return;
+		}
+		if (records == null) {
+			// not read yet, so nothing was served from it
+			try {
+				Files.deleteIfExists(file());
+			} catch (IOException | RuntimeException e) {
+				LOGGER.log(Level.WARNING, "[PersistentSecretCache] Unable to delete " + file(), e);
+			}
+			return;
+		}
+		records.clear();
+		liveBytes = 4;
+		try {
+			log.truncate(4);
+			logBytes = 4;
+		} catch (IOException e) {
+			LOGGER.log(Level.WARNING, "[PersistentSecretCache] Unable to clear " + file(), e);
+		}
+	}
+
+	/** @return whether the log is ready for use, reading it on first use */
+	private boolean open() {
+		if (!enabled) {
+			return false;
+		}
+		if (records != null) {
+			return true;
+		}
+		Path file = file();
+		try {
+			Files.createDirectories(file.getParent());
+			records = new HashMap<>();
+			boolean clean = load(file);
+			log = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+					StandardOpenOption.WRITE);
+			if (!clean || logBytes > liveBytes) {
+				compact();
+			}
+			LOGGER.fine(() -> "[PersistentSecretCache] Read " + records.size() + " secrets from " + file);
+			return true;
+		} catch (IOException | RuntimeException e) {
+			LOGGER.log(Level.WARNING, "[PersistentSecretCache] Unable to open " + file + "; not persisting secrets",
+					e);
+			close();
+			enabled = false;
+			return false;
+		}
+	}
+
+	/**
+	 * Indexes the records of the log in {@link #records}, without decrypting
+	 * them.
+	 *
+	 * @return {@code false} if the log had to be cut short, for instance after a
+	 *         write was interrupted by a crash
+	 */
+	private boolean load(Path file) throws IOException {
+		logBytes = 4;
+		liveBytes = 4;
+		if (!Files.exists(file) || Files.size(file) < 4) {
+			return false;
+		}
+		// read rather than mapped, as a mapping would keep the file from being
+		// replaced by compact() on Windows until it is garbage collected
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+			if (in.readInt() != MAGIC) {
+				return false;
+			}
+			long remaining = Files.size(file) - 4;
+			long now = System.currentTimeMillis();
+			while (remaining > 0) {
+				byte[] bytes;
+				try {
+					int length = in.readInt();
+					if (length < HEADER_LENGTH + NONCE_LENGTH || length > remaining - 4) {
+						return false;
+					}
+					bytes = new byte[length];
+					in.readFully(bytes);
+				} catch (EOFException e) {
+					return false;
+				}
+				logBytes += 4 + bytes.length;
+				remaining -= 4 + bytes.length;
+				ByteBuffer header = ByteBuffer.wrap(bytes);
+				if (header.get() != PUT) {
+					return false;
+				}
+				Record record = new Record(bytes, header.getLong(), header.getLong());
+				if (record.isExpired(now)) {
+					continue;
+				}
+				byte[] digest = new byte[DIGEST_LENGTH];
+				header.get(digest);
+				Record previous = records.put(Base64.getEncoder().encodeToString(digest), record);
+				liveBytes += record.length() - (previous == null ? 0 : previous.length());
+			}
+		}
+		return true;
+	}
+
+	private void append(Record record) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(record.length());
+		buffer.putInt(record.bytes.length).put(record.bytes).flip();
+		while (buffer.hasRemaining()) {
+			log.write(buffer, logBytes + buffer.position());
+		}
+		logBytes += record.length();
+	}
+
+	/**
+	 * Rewrites the log with only the latest unexpired record of each key, and
+	 * swaps it in atomically.
+	 */
+	private void compact() throws IOException {
+		Path file = file();
+		Path compacted = file.resolveSibling(file.getFileName() + ".tmp");
+		long now = System.currentTimeMillis();
+		records.values().removeIf(record -> record.isExpired(now));
+		List<Record> live = new ArrayList<>(records.values());
+		long bytes = 4;
+		try (FileChannel channel = FileChannel.open(compacted, StandardOpenOption.CREATE,
+				StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+			ByteBuffer magic = ByteBuffer.allocate(4).putInt(MAGIC);
+			magic.flip();
+			channel.write(magic);
+			for (Record record : live) {
+				ByteBuffer buffer = ByteBuffer.allocate(record.length());
+				buffer.putInt(record.bytes.length).put(record.bytes).flip();
+				while (buffer.hasRemaining()) {
+					channel.write(buffer);
+				}
+				bytes += record.length();
+			}
+			channel.force(true);
+		}
+		if (log != null) {
+			log.close();
+		}
+		Files.move(compacted, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		log = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+		logBytes = bytes;
+		liveBytes = bytes;
+		LOGGER.fine(() -> "[PersistentSecretCache] Compacted " + file + " to " + live.size() + " secrets");
+	}
+
+	/**
+	 * Closes the log, which is read again on next use.
+	 */
+	synchronized void close() {
+		records = null;
+		if (log != null) {
+			try {
+				log.close();
+			} catch (IOException e) {
+				LOGGER.log(Level.FINE, "[PersistentSecretCache] Failed to close " + file(), e);
+			}
+			log = null;
+		}
+	}
+
+	private byte[] encrypt(String digest, SecretSnapshot snapshot, long writtenAt, long expiresAt)
+			throws IOException, GeneralSecurityException {
+		ByteArrayOutputStream plain = new ByteArrayOutputStream();
+		try (DataOutputStream out = new DataOutputStream(plain)) {
+			out.writeInt(snapshot.getId());
+			out.writeInt(snapshot.getFields().size());
+			for (SecretSnapshot.Field field : snapshot.getFields()) {
+				writeString(out, field.getFieldName());
+				writeString(out, field.getSlug());
+				writeBytes(out, field.getBytes());
+			}
+		}
+		byte[] nonce = new byte[NONCE_LENGTH];
+		random.nextBytes(nonce);
+		ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH).put(PUT).putLong(writtenAt).putLong(expiresAt)
+				.put(Base64.getDecoder().decode(digest));
+		Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+		cipher.init(Cipher.ENCRYPT_MODE, key.get(), new GCMParameterSpec(TAG_BITS, nonce));
+		cipher.updateAAD(header.array());
+		byte[] plainBytes = plain.toByteArray();
+		byte[] encrypted;
+		try {
+			encrypted = cipher.doFinal(plainBytes);
+		} finally {
+			Arrays.fill(plainBytes, (byte) 0);
+		}
+		return ByteBuffer.allocate(HEADER_LENGTH + NONCE_LENGTH + encrypted.length).put(header.array()).put(nonce)
+				.put(encrypted).array();
+	}
+
+	/**
+	 * @return a snapshot the caller owns, whose values are decoded into
+	 *         {@link SecretBytes} without passing through {@code String}s
+	 */
+	private SecretSnapshot decrypt(byte[] bytes) throws IOException, GeneralSecurityException {
+		Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+		cipher.init(Cipher.DECRYPT_MODE, key.get(),
+				new GCMParameterSpec(TAG_BITS, bytes, HEADER_LENGTH, NONCE_LENGTH));
+		cipher.updateAAD(bytes, 0, HEADER_LENGTH);
+		int offset = HEADER_LENGTH + NONCE_LENGTH;
+		byte[] plain = cipher.doFinal(bytes, offset, bytes.length - offset);
+		byte[][] values = null;
+		try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(plain))) {
+			int secretId = in.readInt();
+			int count = in.readInt();
+			List<SecretSnapshot.Field> fields = new ArrayList<>(count);
+			values = new byte[count][];
+			for (int i = 0; i < count; i++) {
+				fields.add(new SecretSnapshot.Field(readString(in), readString(in), null));
+				values[i] = readBytes(in);
+			}
+			return new SecretSnapshot(secretId, fields, SecretBytes.ofEncoded(values));
+		} finally {
+			Arrays.fill(plain, (byte) 0);
+			if (values != null) {
+				for (byte[] value : values) {
+					if (value != null) {
+						Arrays.fill(value, (byte) 0);
+					}
+				}
+			}
+		}
+	}
+
+	private static void writeString(DataOutputStream out, String value) throws IOException {
+		if (value == null) {
+			out.writeInt(-1);
+			return;
+		}
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	/** Writes bytes the way {@link #writeString} does, then overwrites them. */
+	private static void writeBytes(DataOutputStream out, byte[] bytes) throws IOException {
+		if (bytes == null) {
+			out.writeInt(-1);
+			return;
+		}
+		try {
+			out.writeInt(bytes.length);
+			out.write(bytes);
+		} finally {
+			Arrays.fill(bytes, (byte) 0);
+		}
+	}
+
+	private static String readString(DataInputStream in) throws IOException {
+		byte[] bytes = readBytes(in);
+		return bytes == null ? null : new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	private static byte[] readBytes(DataInputStream in) throws IOException {
+		int length = in.readInt();
+		if (length < 0) {
+			return null;
+		}
+		if (length > in.available()) {
+			throw new EOFException();
+		}
+		byte[] bytes = new byte[length];
+		in.readFully(bytes);
+		return bytes;
+	}
+
+	/** @return the HMAC of a key as it is written to the log, in Base64 */
+	private String digest(String baseUrl, String account, String secretId)
+			throws IOException, GeneralSecurityException {
+		Mac mac = Mac.getInstance("HmacSHA256");
+		mac.init(idKey.get());
+		byte[] id = (baseUrl + '\0' + account + '\0' + secretId).getBytes(StandardCharsets.UTF_8);
+		return Base64.getEncoder().encodeToString(mac.doFinal(id));
+	}
+
+	private static Path file() {
+		return new File(Jenkins.get().getRootDir(), "delinea-secret-server/secret-cache.log").toPath();
+	}
+
+	private static final class Record {
+		/** Header, nonce and ciphertext, without the length prefix. */
+		private final byte[] bytes;
+		private final long writtenAt;
+		private final long expiresAt;
+
+		Record(byte[] bytes, long writtenAt, long expiresAt) {
+			this.bytes = bytes;
+			this.writtenAt = writtenAt;
+			this.expiresAt = expiresAt;
+		}
+
+		int length() {
+			return 4 + bytes.length;
+		}
+
+		boolean isExpired(long now) {
+			return now >= expiresAt;
+		}
+	}
+
+	/** A key of the log, generated on first use and kept in the {@link ConfidentialStore}. */
+	private static final class CacheKey extends ConfidentialKey {
+		private final String algorithm;
+		private volatile SecretKey secretKey;
+
+		CacheKey(String suffix, String algorithm) {
+			super(PersistentSecretCache.class.getName() + suffix);
+			this.algorithm = algorithm;
+		}
+
+		SecretKey get() throws IOException {
+			SecretKey current = secretKey;
+			if (current == null) {
+				synchronized (this) {
+					current = secretKey;
+					if (current == null) {
+						byte[] bytes = load();
+						if (bytes == null) {
+							bytes = ConfidentialStore.get().randomBytes(32);
+							store(bytes);
+						}
+						current = new SecretKeySpec(bytes, algorithm);
+						secretKey = current;
+					}
+				}
+			}
+			return current;
+		}
+	}
+}
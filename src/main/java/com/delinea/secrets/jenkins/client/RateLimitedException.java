@@ -0,0 +1,15 @@
+package com.delinea.secrets.jenkins.client;
+
+import java.io.IOException;
+
+/**
+ * Thrown instead of contacting a Secret Server when {@link RateLimiter} would
+ * have a request wait longer than allowed for its turn.
+ */
+public final class RateLimitedException extends IOException {
+	private static final long serialVersionUID = 1L;
+
+	RateLimitedException(String message) {
+		super(message);
+	}
+}
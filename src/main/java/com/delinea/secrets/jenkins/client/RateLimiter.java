@@ -0,0 +1,200 @@
+package com.delinea.secrets.jenkins.client;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.math.NumberUtils;
+import org.apache.hc.client5.http.utils.DateUtils;
+
+/**
+ * Paces the requests made to each Secret Server host with a token bucket, so
+ * that many builds starting together reach the server at a steady rate
+ * instead of all at once. A host's bucket holds up to a burst of requests and
+ * refills at the configured rate; once it is empty, requests are given turns
+ * in the order they arrive and wait for them, unless their turn is further
+ * away than the maximum wait, in which case they fail with a
+ * {@link RateLimitedException} rather than queue up behind a server that
+ * cannot keep up.
+ * <p>
+ * While requests are limited, a {@code 429} or {@code 503} response carrying
+ * {@code Retry-After} also holds back every request to that host until the
+ * time it names. Without a limit, such responses are left to the retries of
+ * {@link FaultTolerance}, so that the default settings never fail requests
+ * for having to wait.
+ */
+public final class RateLimiter {
+	private static final Logger LOGGER = Logger.getLogger(RateLimiter.class.getName());
+
+	/** The longest pause a {@code Retry-After} header is trusted with. */
+	private static final Duration MAX_RETRY_AFTER = Duration.ofMinutes(5);
+
+	private static final RateLimiter INSTANCE = new RateLimiter();
+
+	private volatile Settings settings = new Settings(0, 10, 30);
+	private final ConcurrentMap<String, Bucket> buckets = new ConcurrentHashMap<>();
+
+	private RateLimiter() {
+	}
+
+	public static RateLimiter get() {
+		return INSTANCE;
+	}
+
+	/**
+	 * Applies the settings from the global configuration.
+	 *
+	 * @param requestsPerSecond - The steady rate of requests to each host, 0 for
+	 *                          no limit.
+	 * @param burst             - How many requests a host may receive at once
+	 *                          after a quiet period.
+	 * @param maxWaitSeconds    - How long a request may wait for its turn.
+	 */
+	public void configure(int requestsPerSecond, int burst, int maxWaitSeconds) {
+		settings = new Settings(requestsPerSecond, burst, maxWaitSeconds);
+	}
+
+	/**
+	 * Waits for the turn of a request to {@code host}.
+	 *
+	 * @throws RateLimitedException if the turn is further away than the maximum
+	 *                              wait
+	 */
+	void acquire(String host) throws RateLimitedException, InterruptedException {
+		long waitNanos = bucket(host).reserve(settings);
+		if (waitNanos > 0) {
+			TimeUnit.NANOSECONDS.sleep(waitNanos);
+		}
+	}
+
+	/**
+	 * Like {@link #acquire(String)}, but without blocking: the returned future
+	 * completes when it is the request's turn, or fails with a
+	 * {@link RateLimitedException}.
+	 */
+	CompletableFuture<Void> acquireAsync(String host) {
+		long waitNanos;
+		try {
+			waitNanos = bucket(host).reserve(settings);
+		} catch (RateLimitedException e) {
+			return CompletableFuture.failedFuture(e);
+		}
+		if (waitNanos <= 0) {
+			return CompletableFuture.completedFuture(null);
+		}
+		return CompletableFuture.runAsync(() -> {
+		}, CompletableFuture.delayedExecutor(waitNanos, TimeUnit.NANOSECONDS, SecretFetchExecutor.get()));
+	}
+
+	/**
+	 * Takes note of a response from the host, pausing it if the server asked
+	 * for that.
+	 *
+	 * @param retryAfter - The {@code Retry-After} header, if any.
+	 */
+	void onResponse(String host, int status, String retryAfter) {
+		if (settings.intervalNanos == 0 || (status != 429 && status != 503) || StringUtils.isBlank(retryAfter)) {
+			return;
+		}
+		Duration pause = parseRetryAfter(retryAfter.trim());
+		if (pause == null || pause.isNegative() || pause.isZero()) {
+			return;
+		}
+		Duration bounded = pause.compareTo(MAX_RETRY_AFTER) > 0 ? MAX_RETRY_AFTER : pause;
+		LOGGER.fine(() -> "[RateLimiter] " + host + " answered " + status + "; holding requests to it for "
+				+ bounded.toMillis() + "ms");
+		bucket(host).pause(bounded.toNanos());
+	}
+
+	private static Duration parseRetryAfter(String value) {
+		if (NumberUtils.isDigits(value)) {
+			return Duration.ofSeconds(NumberUtils.toLong(value));
+		}
+		Instant date = DateUtils.parseStandardDate(value);
+		return date == null ? null : Duration.between(Instant.now(), date);
+	}
+
+	private Bucket bucket(String host) {
+		return buckets.computeIfAbsent(normalize(host), h -> new Bucket(settings.burst));
+	}
+
+	private static String normalize(String host) {
+		return StringUtils.defaultString(host).toLowerCase(Locale.ROOT);
+	}
+
+	/**
+	 * One host's bucket. Rather than queueing waiters, each request reserves the
+	 * next free turn when it arrives, which serves them first come, first
+	 * served, and then sleeps until that turn. A new bucket starts full.
+	 */
+	private static final class Bucket {
+		private double storedPermits;
+		private long nextFreeNanos = System.nanoTime();
+		private long pausedUntilNanos = nextFreeNanos;
+
+		Bucket(int burst) {
+			this.storedPermits = burst;
+		}
+
+		/**
+		 * @return how long to wait for the turn just reserved
+		 */
+		synchronized long reserve(Settings settings) throws RateLimitedException {
+			long now = System.nanoTime();
+			if (settings.intervalNanos == 0) {
+				// not limited, including by pauses requested while it was
+				return 0;
+			}
+			if (pausedUntilNanos - nextFreeNanos > 0) {
+				// nothing was sent while paused, so nothing has been saved up either
+				nextFreeNanos = pausedUntilNanos;
+				storedPermits = 0;
+			}
+			if (now - nextFreeNanos > 0) {
+				storedPermits = Math.min(settings.burst,
+						storedPermits + (double) (now - nextFreeNanos) / settings.intervalNanos);
+				nextFreeNanos = now;
+			}
+			long turn = nextFreeNanos;
+			long wait = Math.max(0, turn - now);
+			if (wait > settings.maxWaitNanos) {
+				throw new RateLimitedException("Too many requests queued for Secret Server; the next turn is "
+						+ toMillis(wait) + "ms away");
+			}
+			double fromStored = Math.min(1, storedPermits);
+			storedPermits -= fromStored;
+			nextFreeNanos += (long) ((1 - fromStored) * settings.intervalNanos);
+			return wait;
+		}
+
+		synchronized void pause(long forNanos) {
+			long until = System.nanoTime() + forNanos;
+			if (until - pausedUntilNanos > 0) {
+				pausedUntilNanos = until;
+			}
+		}
+
+		private static long toMillis(long nanos) {
+			return TimeUnit.NANOSECONDS.toMillis(nanos);
+		}
+	}
+
+	private static final class Settings {
+		/** Zero if requests are not limited. */
+		private final long intervalNanos;
+		private final int burst;
+		private final long maxWaitNanos;
+
+		Settings(int requestsPerSecond, int burst, int maxWaitSeconds) {
+			this.intervalNanos = requestsPerSecond > 0 ? TimeUnit.SECONDS.toNanos(1) / requestsPerSecond : 0;
+			this.burst = Math.max(1, burst);
+			this.maxWaitNanos = TimeUnit.SECONDS.toNanos(Math.max(0, maxWaitSeconds));
+		}
+	}
+}
@@ -0,0 +1,115 @@
+package com.delinea.secrets.jenkins.client;
+
+import java.time.Duration;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.annotation.CheckForNull;
+
+/**
+ * A lazily loaded value that is kept fresh. Reads of a loaded value take no
+ * lock. Once the value is older than the refresh interval it is still served
+ * while a single background load replaces it; only when it is older than
+ * twice the interval, because background loads keep failing, do readers wait
+ * for a load of their own. Concurrent readers that find no usable value share
+ * one load.
+ */
+public final class RefreshingValue<T> {
+	private static final Logger LOGGER = Logger.getLogger(RefreshingValue.class.getName());
+
+	public interface Loader<T> {
+		T load() throws Exception;
+	}
+
+	private volatile Entry<T> entry;
+	private final AtomicBoolean refreshing = new AtomicBoolean();
+
+	/**
+	 * @param loader       - Loads the value; a {@code null} result is returned but
+	 *                     not kept.
+	 * @param refreshAfter - How old the value may get before it is refreshed;
+	 *                     zero keeps it forever.
+	 * @param executor     - Runs background refreshes.
+	 */
+	public T get(Loader<T> loader, Duration refreshAfter, Executor executor) throws Exception {
+		Entry<T> current = entry;
+		if (current != null) {
+			if (refreshAfter.isZero() || current.age() < refreshAfter.toNanos()) {
+				return current.value;
+			}
+			if (current.age() < refreshAfter.multipliedBy(2).toNanos()) {
+				refreshInBackground(loader, executor);
+				return current.value;
+			}
+		}
+		synchronized (this) {
+			current = entry;
+			if (current != null
+					&& (refreshAfter.isZero() || current.age() < refreshAfter.multipliedBy(2).toNanos())) {
+				return current.value;
+			}
+			T value = loader.load();
+			if (value != null) {
+				entry = new Entry<>(value);
+			}
+			return value;
+		}
+	}
+
+	/**
+	 * Returns the value if it is younger than the refresh interval, without
+	 * loading, refreshing or allocating anything.
+	 *
+	 * @param refreshAfterNanos - How old the value may be; zero accepts any
+	 *                          age.
+	 * @return the value, or {@code null} if there is none this fresh
+	 */
+	@CheckForNull
+	public T getIfFresh(long refreshAfterNanos) {
+		Entry<T> current = entry;
+		return current != null && (refreshAfterNanos == 0 || current.age() < refreshAfterNanos) ? current.value
+				: null;
+	}
+
+	public void invalidate() {
+		entry = null;
+	}
+
+	private void refreshInBackground(Loader<T> loader, Executor executor) {
+		if (!refreshing.compareAndSet(false, true)) {
+			return;
+		}
+		try {
+			executor.execute(() -> {
+				try {
+					T value = loader.load();
+					if (value != null) {
+						entry = new Entry<>(value);
+					}
+				} catch (Exception e) {
+					LOGGER.log(Level.FINE, "[RefreshingValue] Background refresh failed", e);
+				} finally {
+					refreshing.set(false);
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			refreshing.set(false);
+		}
+	}
+
+	private static final class Entry<T> {
+		private final T value;
+		private final long loadedAt = System.nanoTime();
+
+		Entry(T value) {
+			this.value = value;
+		}
+
+		long age() {
+			return System.nanoTime() - loadedAt;
+		}
+	}
+}
@@ -0,0 +1,200 @@
+package com.delinea.secrets.jenkins.client;
+
+import java.lang.ref.Cleaner;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Secret values held outside the Java heap, as UTF-8 in a single direct
+ * buffer, so that they neither linger in the old generation as
+ * {@code String}s nor survive in heap dumps. Values are only decoded when
+ * read, and the buffer is overwritten with zeros as soon as the last
+ * reference is released, or failing that when the instance is garbage
+ * collected.
+ * <p>
+ * An instance starts with one reference, owned by whoever created it. Every
+ * further holder, such as a cache, takes a reference with
+ * {@link #tryRetain()} and gives it back with {@link #release()}; once an
+ * instance has been released for the last time it can no longer be read.
+ */
+public final class SecretBytes {
+	private static final Cleaner CLEANER = Cleaner.create();
+
+	private final State state;
+	private final Cleaner.Cleanable cleanable;
+
+	private SecretBytes(State state) {
+		this.state = state;
+		this.cleanable = CLEANER.register(this, state);
+	}
+
+	/**
+	 * @param values - The values to hold; {@code null} values are kept as such.
+	 */
+	public static SecretBytes of(List<String> values) {
+		byte[][] encoded = new byte[values.size()][];
+		for (int i = 0; i < encoded.length; i++) {
+			String value = values.get(i);
+			if (value != null) {
+				ByteBuffer bytes = StandardCharsets.UTF_8.encode(CharBuffer.wrap(value));
+				encoded[i] = new byte[bytes.remaining()];
+				bytes.get(encoded[i]);
+				zero(bytes);
+			}
+		}
+		return ofEncoded(encoded);
+	}
+
+	/**
+	 * @param encoded - The UTF-8 encoding of each value, or {@code null}; the
+	 *                arrays are overwritten with zeros once copied.
+	 */
+	static SecretBytes ofEncoded(byte[][] encoded) {
+		int total = 0;
+		for (byte[] value : encoded) {
+			if (value != null) {
+				total += value.length;
+			}
+		}
+		ByteBuffer buffer = ByteBuffer.allocateDirect(total);
+		int[] offsets = new int[encoded.length];
+		int[] lengths = new int[encoded.length];
+		for (int i = 0; i < encoded.length; i++) {
+			offsets[i] = buffer.position();
+			if (encoded[i] == null) {
+				lengths[i] = -1;
+			} else {
+				lengths[i] = encoded[i].length;
+				buffer.put(encoded[i]);
+				Arrays.fill(encoded[i], (byte) 0);
+			}
+		}
+		return new SecretBytes(new State(buffer, offsets, lengths));
+	}
+
+	public int size() {
+		return state.offsets.length;
+	}
+
+	/**
+	 * Decodes a value; the returned {@code String} is the caller's only copy on
+	 * the heap.
+	 *
+	 * @throws IllegalStateException if this instance has been released
+	 */
+	public String getString(int index) {
+		byte[] bytes = getBytes(index);
+		if (bytes == null) {
+			return null;
+		}
+		try {
+			return new String(bytes, StandardCharsets.UTF_8);
+		} finally {
+			Arrays.fill(bytes, (byte) 0);
+		}
+	}
+
+	/**
+	 * Decodes a value into an array the caller should overwrite once done with
+	 * it.
+	 *
+	 * @throws IllegalStateException if this instance has been released
+	 */
+	public char[] getChars(int index) {
+		byte[] bytes = getBytes(index);
+		if (bytes == null) {
+			return null;
+		}
+		CharBuffer chars = StandardCharsets.UTF_8.decode(ByteBuffer.wrap(bytes));
+		Arrays.fill(bytes, (byte) 0);
+		char[] value = new char[chars.remaining()];
+		chars.get(value);
+		Arrays.fill(chars.array(), '\0');
+		return value;
+	}
+
+	/**
+	 * @return a copy of the UTF-8 encoding of a value, which the caller should
+	 *         overwrite once done with it
+	 */
+	byte[] getBytes(int index) {
+		synchronized (state) {
+			if (state.destroyed) {
+				throw new IllegalStateException("Secret value has been released");
+			}
+			int length = state.lengths[index];
+			if (length < 0) {
+				return null;
+			}
+			byte[] bytes = new byte[length];
+			state.buffer.get(state.offsets[index], bytes);
+			return bytes;
+		}
+	}
+
+	/**
+	 * Takes a reference, unless the last one has already been released.
+	 *
+	 * @return whether the values may be read until the matching
+	 *         {@link #release()}
+	 */
+	public boolean tryRetain() {
+		int refs;
+		do {
+			refs = state.refs.get();
+			if (refs <= 0) {
+				return false;
+			}
+		} while (!state.refs.compareAndSet(refs, refs + 1));
+		return true;
+	}
+
+	/**
+	 * Gives back a reference; the values are zeroed when the last one is given
+	 * back.
+	 */
+	public void release() {
+		if (state.refs.decrementAndGet() == 0) {
+			cleanable.clean();
+		}
+	}
+
+	public boolean isReleased() {
+		synchronized (state) {
+			return state.destroyed;
+		}
+	}
+
+	private static void zero(ByteBuffer buffer) {
+		// an encoder's buffer is usually larger than its limit
+		buffer.clear();
+		for (int i = 0; i < buffer.capacity(); i++) {
+			buffer.put(i, (byte) 0);
+		}
+	}
+
+	/** Everything the cleaner needs, without a reference back to the {@link SecretBytes}. */
+	private static final class State implements Runnable {
+		private final ByteBuffer buffer;
+		private final int[] offsets;
+		private final int[] lengths;
+		private final AtomicInteger refs = new AtomicInteger(1);
+		private boolean destroyed;
+
+		State(ByteBuffer buffer, int[] offsets, int[] lengths) {
+			this.buffer = buffer;
+			this.offsets = offsets;
+			this.lengths = lengths;
+		}
+
+		@Override
+		public synchronized void run() {
+			destroyed = true;
+			zero(buffer);
+		}
+	}
+}
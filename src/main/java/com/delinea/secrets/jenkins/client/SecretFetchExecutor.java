@@ -0,0 +1,285 @@
+package com.delinea.secrets.jenkins.client;
+
+import java.net.URI;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import org.apache.commons.lang3.StringUtils;
+
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
+import jenkins.util.SystemProperties;
+
+/**
+ * Runs secret fetches concurrently on a bounded, controller-wide thread pool.
+ * The number of fetches in flight against any one Secret Server host is
+ * capped separately so that a build with many secrets cannot monopolise a
+ * server. Fetches beyond the cap wait in their host's queue rather than on a
+ * pool thread, so a slow host cannot hold up fetches from other hosts or
+ * background work.
+ */
+public final class SecretFetchExecutor implements Executor {
+	private static final int THREADS = SystemProperties.getInteger(SecretFetchExecutor.class.getName() + ".threads",
+			16);
+	private static final int PER_HOST = SystemProperties
+			.getInteger(SecretFetchExecutor.class.getName() + ".concurrencyPerHost", 8);
+
+	private static final SecretFetchExecutor INSTANCE = new SecretFetchExecutor();
+
+	private final ThreadPoolExecutor executor;
+	private final ConcurrentMap<String, HostQueue> hostQueues = new ConcurrentHashMap<>();
+
+	private SecretFetchExecutor() {
+		executor = new ThreadPoolExecutor(THREADS, THREADS, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+				new NamingThreadFactory(new DaemonThreadFactory(), "Delinea Secret Server fetch"));
+		executor.allowCoreThreadTimeOut(true);
+	}
+
+	public static SecretFetchExecutor get() {
+		return INSTANCE;
+	}
+
+	/**
+	 * A single fetch and the Secret Server it talks to.
+	 */
+	public interface Fetch<T> {
+		String getBaseUrl();
+
+		T fetch() throws Exception;
+	}
+
+	/**
+	 * Thrown when one of the fetches passed to {@link #fetchAll(List)} fails.
+	 */
+	public static final class FetchFailedException extends Exception {
+		private static final long serialVersionUID = 1L;
+		private final transient Fetch<?> fetch;
+
+		FetchFailedException(Fetch<?> fetch, Throwable cause) {
+			super(cause);
+			this.fetch = fetch;
+		}
+
+		public Fetch<?> getFetch() {
+			return fetch;
+		}
+	}
+
+	/**
+	 * Receives the results of {@link #fetchInOrder}.
+	 */
+	public interface Sink<T, E extends Exception> {
+		void accept(int index, T result) throws E;
+	}
+
+	/**
+	 * Runs every fetch and returns their results in the order the fetches were
+	 * given. As soon as one fails, the others are cancelled and its failure is
+	 * thrown.
+	 *
+	 * @throws FetchFailedException if a fetch fails
+	 * @throws InterruptedException if the calling thread is interrupted, in which
+	 *                              case every fetch is cancelled
+	 */
+	public <T> List<T> fetchAll(List<? extends Fetch<T>> fetches) throws FetchFailedException, InterruptedException {
+		List<T> results = new ArrayList<>(Collections.nCopies(fetches.size(), null));
+		fetchInOrder(fetches, results::set);
+		return results;
+	}
+
+	/**
+	 * Like {@link #fetchInOrder(List, Sink, Consumer)}, for results that need no
+	 * clean up.
+	 */
+	public <T, E extends Exception> void fetchInOrder(List<? extends Fetch<T>> fetches, Sink<? super T, E> sink)
+			throws FetchFailedException, InterruptedException, E {
+		fetchInOrder(fetches, sink, result -> {
+		});
+	}
+
+	/**
+	 * Runs every fetch and hands each result to {@code sink} on the calling
+	 * thread, in the order the fetches were given, as soon as it and every
+	 * result before it are in. As soon as a fetch or the sink fails, the other
+	 * fetches are cancelled and the failure is thrown.
+	 * <p>
+	 * A result handed to the sink is the sink's, even if it throws. Every other
+	 * result, whether it had arrived before the failure or arrives after the
+	 * cancellation, is passed to {@code discard}, for instance to release it.
+	 *
+	 * @throws FetchFailedException if a fetch fails
+	 * @throws InterruptedException if the calling thread is interrupted, in which
+	 *                              case every fetch is cancelled
+	 */
+	public <T, E extends Exception> void fetchInOrder(List<? extends Fetch<T>> fetches, Sink<? super T, E> sink,
+			Consumer<? super T> discard) throws FetchFailedException, InterruptedException, E {
+		if (fetches.size() == 1) {
+			Fetch<T> fetch = fetches.get(0);
+			T result;
+			try {
+				result = fetch.fetch();
+			} catch (InterruptedException e) {
+				throw e;
+			} catch (Exception e) {
+				throw new FetchFailedException(fetch, e);
+			}
+			sink.accept(0, result);
+			return;
+		}
+		BlockingQueue<Future<T>> completions = new LinkedBlockingQueue<>();
+		Map<Future<T>, Integer> indexes = new IdentityHashMap<>();
+		List<T> pending = new ArrayList<>(Collections.nCopies(fetches.size(), null));
+		boolean[] done = new boolean[fetches.size()];
+		try {
+			for (int i = 0; i < fetches.size(); i++) {
+				Fetch<T> fetch = fetches.get(i);
+				FutureTask<T> task = new FutureTask<T>(fetch::fetch) {
+					@Override
+					protected void set(T result) {
+						super.set(result);
+						if (isCancelled()) {
+							// arrived after the cancellation, so nobody will take it
+							discard.accept(result);
+						}
+					}
+
+					@Override
+					protected void done() {
+						completions.add(this);
+					}
+				};
+				indexes.put(task, i);
+				queueFor(fetch.getBaseUrl()).execute(task);
+			}
+			int next = 0;
+			for (int completed = 0; completed < fetches.size(); completed++) {
+				Future<T> future = completions.take();
+				int index = indexes.get(future);
+				try {
+					pending.set(index, future.get());
+				} catch (ExecutionException e) {
+					throw new FetchFailedException(fetches.get(index), e.getCause());
+				}
+				done[index] = true;
+				while (next < fetches.size() && done[next]) {
+					T result = pending.set(next, null);
+					sink.accept(next++, result);
+				}
+			}
+		} finally {
+			for (Map.Entry<Future<T>, Integer> entry : indexes.entrySet()) {
+				Future<T> future = entry.getKey();
+				if (!future.cancel(true) && !done[entry.getValue()]) {
+					// completed, but never taken from the queue
+					discardQuietly(future, discard);
+				}
+			}
+			for (T result : pending) {
+				if (result != null) {
+					discard.accept(result);
+				}
+			}
+		}
+	}
+
+	private static <T> void discardQuietly(Future<T> completed, Consumer<? super T> discard) {
+		T result;
+		try {
+			result = completed.get();
+		} catch (ExecutionException | CancellationException e) {
+			return;
+		} catch (InterruptedException e) {
+			// not reached, as the future is done; keep the interrupt for the caller
+			Thread.currentThread().interrupt();
+			return;
+		}
+		discard.accept(result);
+	}
+
+	/**
+	 * Runs a single background fetch, such as a refresh of a cached value, on the
+	 * same pool.
+	 */
+	@Override
+	public void execute(Runnable task) {
+		executor.execute(task);
+	}
+
+	private HostQueue queueFor(String baseUrl) {
+		String host;
+		try {
+			host = StringUtils.defaultString(URI.create(StringUtils.trimToEmpty(baseUrl)).getHost(),
+					StringUtils.defaultString(baseUrl));
+		} catch (IllegalArgumentException e) {
+			host = StringUtils.defaultString(baseUrl);
+		}
+		return hostQueues.computeIfAbsent(host.toLowerCase(Locale.ROOT), h -> new HostQueue());
+	}
+
+	/**
+	 * Hands one host's fetches to the pool, at most {@link #PER_HOST} at a time,
+	 * in the order they were queued.
+	 */
+	private final class HostQueue implements Executor {
+		private final Queue<Runnable> waiting = new ArrayDeque<>();
+		private int running;
+
+		@Override
+		public void execute(Runnable task) {
+			synchronized (this) {
+				if (running >= PER_HOST) {
+					waiting.add(task);
+					return;
+				}
+				running++;
+			}
+			dispatch(task);
+		}
+
+		private void dispatch(Runnable task) {
+			try {
+				executor.execute(() -> {
+					try {
+						task.run();
+					} finally {
+						next();
+					}
+				});
+			} catch (RejectedExecutionException e) {
+				next();
+				throw e;
+			}
+		}
+
+		private void next() {
+			Runnable task;
+			synchronized (this) {
+				task = waiting.poll();
+				if (task == null) {
+					running--;
+					return;
+				}
+			}
+			dispatch(task);
+		}
+	}
+}
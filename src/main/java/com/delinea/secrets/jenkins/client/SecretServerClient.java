@@ -0,0 +1,301 @@
+package com.delinea.secrets.jenkins.client;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Future;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.hc.client5.http.async.methods.SimpleHttpRequest;
+import org.apache.hc.client5.http.async.methods.SimpleHttpResponse;
+import org.apache.hc.client5.http.async.methods.SimpleRequestBuilder;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.core5.concurrent.FutureCallback;
+import org.apache.hc.core5.http.ContentType;
+import org.apache.hc.core5.http.Header;
+import org.apache.hc.core5.http.HttpHeaders;
+import org.apache.hc.core5.http.HttpStatus;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.core.env.MapPropertySource;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.HttpServerErrorException;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.client.RestClientException;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import com.delinea.platform.service.AuthenticationService;
+import com.delinea.secrets.jenkins.metrics.SecretServerMetrics;
+import com.delinea.server.spring.Secret;
+import com.delinea.server.spring.SecretServer;
+import com.delinea.server.spring.SecretServerFactoryBean;
+
+/**
+ * A {@link SecretServer} together with the Spring context that built it. The
+ * context is kept open for as long as the client is cached by
+ * {@link SecretServerClientRegistry} so that it is bootstrapped once per
+ * (base URL, service account, proxy) instead of once per secret.
+ * <p>
+ * Requests are authenticated by {@link AccessTokenInterceptor} with tokens
+ * shared through {@link AccessTokenCache}, which replaces the per-request
+ * authentication the SDK would otherwise perform. They are sent over
+ * connections from the shared {@link ConnectionPool}, paced by the
+ * {@link RateLimiter}.
+ */
+public final class SecretServerClient implements Closeable {
+	private static final Logger LOGGER = Logger.getLogger(SecretServerClient.class.getName());
+
+	static final String USERNAME_PROPERTY = "server.username";
+	static final String PASSWORD_PROPERTY = "server.password";
+	static final String SERVER_URL_PROPERTY = "server.url";
+
+	/** The SDK's path for a secret, relative to the API root. */
+	private static final String SECRET_PATH = "/secrets/{id}";
+
+	private final ClientKey key;
+	private final Map<String, String> proxyConfig;
+	private final AnnotationConfigApplicationContext context;
+	private final CloseableHttpClient httpClient;
+	private final SecretServer secretServer;
+	private final TokenEndpoint tokenEndpoint;
+	private final ObjectMapper objectMapper;
+	private final SingleFlight<Integer, Secret> inFlight = new SingleFlight<>();
+
+	private SecretServerClient(ClientKey key, Map<String, String> proxyConfig,
+			AnnotationConfigApplicationContext context, String password, CloseableHttpClient httpClient) {
+		this.key = key;
+		this.proxyConfig = Collections.unmodifiableMap(new HashMap<>(proxyConfig));
+		this.context = context;
+		this.httpClient = httpClient;
+		this.secretServer = context.getBean(SecretServer.class);
+		HttpComponentsClientHttpRequestFactory requestFactory = new HttpComponentsClientHttpRequestFactory(httpClient);
+		this.tokenEndpoint = new TokenEndpoint(key, password, requestFactory);
+		// replaces the SDK's own client, which pools connections per context
+		secretServer.setRequestFactory(requestFactory);
+		secretServer.setInterceptors(Collections.singletonList(new AccessTokenInterceptor(key, tokenEndpoint)));
+		this.objectMapper = objectMapper(secretServer.getMessageConverters());
+	}
+
+	static SecretServerClient create(ClientKey key, String password, Map<String, String> proxyConfig) {
+		Map<String, Object> properties = new HashMap<>();
+		if (StringUtils.isNotBlank(key.getBaseUrl())) {
+			properties.put(SERVER_URL_PROPERTY, key.getBaseUrl());
+		}
+		properties.put(USERNAME_PROPERTY, key.getUsername());
+		properties.put(PASSWORD_PROPERTY, password);
+		properties.putAll(proxyConfig);
+
+		AnnotationConfigApplicationContext context = new AnnotationConfigApplicationContext();
+		CloseableHttpClient httpClient = HttpClientFactory.create(proxyConfig);
+		try {
+			context.getEnvironment().getPropertySources().addLast(new MapPropertySource("properties", properties));
+			context.registerBean(SecretServerFactoryBean.class);
+			context.registerBean(AuthenticationService.class);
+			context.refresh();
+			return new SecretServerClient(key, proxyConfig, context, password, httpClient);
+		} catch (RuntimeException e) {
+			context.close();
+			closeQuietly(httpClient);
+			throw e;
+		}
+	}
+
+	ClientKey getKey() {
+		return key;
+	}
+
+	/**
+	 * Obtains an access token for this client's service account, unless one is
+	 * already cached, so that the next request does not have to wait for one.
+	 */
+	public void authenticate() {
+		AccessTokenCache.get().getToken(key, tokenEndpoint);
+	}
+
+	/**
+	 * Fetches a secret. Concurrent requests for the same secret through this
+	 * client, and so for the same service account, share one call to Secret
+	 * Server, retries included. Transient failures are retried as configured in
+	 * {@link FaultTolerance}.
+	 *
+	 * @param id the id of the secret
+	 * @return the secret, as returned by {@link SecretServer#getSecret(int)}
+	 * @throws InterruptedException if interrupted while waiting for another
+	 *                              caller's request for the same secret or
+	 *                              before a retry
+	 */
+	public Secret getSecret(int id) throws InterruptedException {
+		// coalesce around the retries, so that one failure counts once against the breaker
+		return inFlight.execute(id, () -> FaultTolerance.get().call(key.getBaseUrl(), () -> fetchSecret(id)));
+	}
+
+	private Secret fetchSecret(int id) {
+		long start = System.nanoTime();
+		try {
+			Secret secret = secretServer.getSecret(id);
+			SecretServerMetrics.get().succeeded(SecretServerMetrics.Operation.GET_SECRET, start);
+			return secret;
+		} catch (RuntimeException e) {
+			SecretServerMetrics.get().failed(SecretServerMetrics.Operation.GET_SECRET, start, e);
+			throw e;
+		}
+	}
+
+	/**
+	 * Fetches a secret without blocking the calling thread. The request is sent
+	 * through the shared asynchronous client of {@link ConnectionPool}, and
+	 * transient failures are retried as configured in {@link FaultTolerance}.
+	 * As with {@link #getSecret(int)}, concurrent requests for the same secret
+	 * share one call. Cancelling the returned future, or letting
+	 * {@link CompletableFuture#orTimeout} expire it, aborts the request once no
+	 * other caller is waiting for it.
+	 *
+	 * @param id the id of the secret
+	 * @return the secret, or a failure as {@link #getSecret(int)} would throw it
+	 */
+	public CompletableFuture<Secret> getSecretAsync(int id) {
+		return inFlight.executeAsync(id,
+				() -> FaultTolerance.get().callAsync(key.getBaseUrl(), () -> fetchSecretAsync(id)));
+	}
+
+	private CompletableFuture<Secret> fetchSecretAsync(int id) {
+		URI uri = secretServer.getUriTemplateHandler().expand(SECRET_PATH, id);
+		long start = System.nanoTime();
+		CompletableFuture<Secret> result = new CompletableFuture<>();
+		AccessTokenCache tokens = AccessTokenCache.get();
+		tokens.getTokenAsync(key, tokenEndpoint)
+				.thenCompose(token -> send(uri, token, result).thenCompose(response -> {
+					if (response.getCode() != HttpStatus.SC_UNAUTHORIZED) {
+						return CompletableFuture.completedFuture(response);
+					}
+					// as AccessTokenInterceptor does for blocking requests
+					tokens.invalidate(key, token);
+					return tokens.getTokenAsync(key, tokenEndpoint).thenCompose(fresh -> send(uri, fresh, result));
+				}))
+				.thenApply(response -> toSecret(uri, response))
+				.whenComplete((secret, failure) -> {
+					if (failure == null) {
+						SecretServerMetrics.get().succeeded(SecretServerMetrics.Operation.GET_SECRET, start);
+						result.complete(secret);
+						return;
+					}
+					Throwable cause = failure instanceof CompletionException && failure.getCause() != null
+							? failure.getCause()
+							: failure;
+					if (!(cause instanceof CancellationException)) {
+						SecretServerMetrics.get().failed(SecretServerMetrics.Operation.GET_SECRET, start, cause);
+					}
+					result.completeExceptionally(cause);
+				});
+		return result;
+	}
+
+	/**
+	 * Sends a request for a secret once it is its turn with the
+	 * {@link RateLimiter}, as blocking requests do. The request is aborted as
+	 * soon as {@code owner} completes, whether normally, exceptionally or by
+	 * being cancelled.
+	 */
+	private CompletableFuture<SimpleHttpResponse> send(URI uri, AccessToken token, CompletableFuture<?> owner) {
+		return RateLimiter.get().acquireAsync(uri.getHost()).handle((turn, failure) -> failure)
+				.thenCompose(failure -> {
+					if (failure != null) {
+						return CompletableFuture.failedFuture(ioFailure(uri, (IOException) failure));
+					}
+					if (owner.isDone()) {
+						return CompletableFuture.failedFuture(new CancellationException());
+					}
+					return exchange(uri, token, owner);
+				});
+	}
+
+	private CompletableFuture<SimpleHttpResponse> exchange(URI uri, AccessToken token, CompletableFuture<?> owner) {
+		CompletableFuture<SimpleHttpResponse> response = new CompletableFuture<>();
+		SimpleHttpRequest request = SimpleRequestBuilder.get(uri)
+				.setHeader(HttpHeaders.AUTHORIZATION, token.getTokenType() + " " + token.getValue())
+				.setHeader(HttpHeaders.ACCEPT, ContentType.APPLICATION_JSON.getMimeType())
+				.build();
+		Future<SimpleHttpResponse> exchange = ConnectionPool.get().getAsyncClient().execute(request,
+				HttpClientFactory.createAsyncContext(proxyConfig), new FutureCallback<SimpleHttpResponse>() {
+					@Override
+					public void completed(SimpleHttpResponse result) {
+						Header retryAfter = result.getFirstHeader(HttpHeaders.RETRY_AFTER);
+						RateLimiter.get().onResponse(uri.getHost(), result.getCode(),
+								retryAfter == null ? null : retryAfter.getValue());
+						response.complete(result);
+					}
+
+					@Override
+					public void failed(Exception e) {
+						response.completeExceptionally(e instanceof IOException ? ioFailure(uri, (IOException) e) : e);
+					}
+
+					@Override
+					public void cancelled() {
+						response.cancel(false);
+					}
+				});
+		owner.whenComplete((value, failure) -> exchange.cancel(true));
+		return response;
+	}
+
+	/** Wrapped as RestTemplate does, so failures look the same on both paths. */
+	private static ResourceAccessException ioFailure(URI uri, IOException e) {
+		return new ResourceAccessException("I/O error on GET request for \"" + uri + "\": " + e.getMessage(), e);
+	}
+
+	private Secret toSecret(URI uri, SimpleHttpResponse response) {
+		int status = response.getCode();
+		byte[] body = response.getBodyBytes() == null ? new byte[0] : response.getBodyBytes();
+		if (status >= 400) {
+			String reason = StringUtils.defaultString(response.getReasonPhrase());
+			throw status >= 500
+					? HttpServerErrorException.create(HttpStatusCode.valueOf(status), reason, null, body,
+							StandardCharsets.UTF_8)
+					: HttpClientErrorException.create(HttpStatusCode.valueOf(status), reason, null, body,
+							StandardCharsets.UTF_8);
+		}
+		try {
+			return objectMapper.readValue(body, Secret.class);
+		} catch (IOException e) {
+			throw new RestClientException("Error reading the response of GET request for \"" + uri + "\"", e);
+		}
+	}
+
+	/** @return the mapper the SDK reads responses with, so both paths map secrets alike */
+	private static ObjectMapper objectMapper(Iterable<HttpMessageConverter<?>> converters) {
+		for (HttpMessageConverter<?> converter : converters) {
+			if (converter instanceof MappingJackson2HttpMessageConverter) {
+				return ((MappingJackson2HttpMessageConverter) converter).getObjectMapper();
+			}
+		}
+		return new ObjectMapper();
+	}
+
+	@Override
+	public void close() {
+		context.close();
+		closeQuietly(httpClient);
+	}
+
+	private static void closeQuietly(CloseableHttpClient httpClient) {
+		try {
+			httpClient.close();
+		} catch (IOException e) {
+			LOGGER.log(Level.FINE, "[SecretServerClient] Failed to close HTTP client", e);
+		}
+	}
+}
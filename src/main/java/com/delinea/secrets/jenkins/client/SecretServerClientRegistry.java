@@ -0,0 +1,114 @@
+package com.delinea.secrets.jenkins.client;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+
+import jenkins.util.SystemProperties;
+import jenkins.util.Timer;
+
+/**
+ * Controller-wide cache of {@link SecretServerClient}s, one per (base URL,
+ * service account, effective proxy). Clients are shared by every build and
+ * credential. Changing a service account's password, or the proxy, makes a
+ * new key and so a new client. The cache is bounded in size, and clients that
+ * have not been used for a while are closed, so keys that are no longer used
+ * do not keep a Spring context, and the password it holds, around. A client is
+ * also closed as soon as the password of its account changes in a credentials
+ * store, see {@link #evictOtherPasswords}, and every client is thrown away,
+ * together with their cached access tokens and secret values, when the base
+ * URL, credential or proxy settings of the plugin configuration change.
+ */
+public final class SecretServerClientRegistry {
+	private static final Logger LOGGER = Logger.getLogger(SecretServerClientRegistry.class.getName());
+
+	/**
+	 * How long an evicted client is kept open so that fetches already running on
+	 * it can complete.
+	 */
+	private static final long CLOSE_DELAY_SECONDS = 60;
+	static final int MAX_CLIENTS = SystemProperties
+			.getInteger(SecretServerClientRegistry.class.getName() + ".maxClients", 100);
+	static final Duration IDLE_TIMEOUT = Duration.ofMinutes(SystemProperties
+			.getInteger(SecretServerClientRegistry.class.getName() + ".idleMinutes", 60));
+
+	private static final SecretServerClientRegistry INSTANCE = new SecretServerClientRegistry();
+
+	private final Cache<ClientKey, SecretServerClient> clients = Caffeine.newBuilder()
+			.maximumSize(MAX_CLIENTS)
+			.expireAfterAccess(IDLE_TIMEOUT)
+			.removalListener((ClientKey key, SecretServerClient client, RemovalCause cause) -> {
+				if (key != null) {
+					AccessTokenCache.get().invalidate(key);
+				}
+				if (client != null) {
+					LOGGER.fine(() -> "[SecretServerClientRegistry] Evicting client for " + client.getKey() + " ("
+							+ cause + ")");
+					Timer.get().schedule(() -> closeQuietly(client), CLOSE_DELAY_SECONDS, TimeUnit.SECONDS);
+				}
+			}).build();
+
+	private SecretServerClientRegistry() {
+	}
+
+	public static SecretServerClientRegistry get() {
+		return INSTANCE;
+	}
+
+	/**
+	 * Returns the cached client for this combination of base URL, service account
+	 * and proxy, creating it if needed.
+	 *
+	 * @param baseUrl     - The Secret Server or Platform URL.
+	 * @param username    - The service account username.
+	 * @param password    - The service account password.
+	 * @param proxyConfig - The resolved proxy, as returned by
+	 *                    {@link com.delinea.secrets.jenkins.util.DelineaProxyUtil#resolveProxy}.
+	 * @return the shared client
+	 */
+	public SecretServerClient getClient(String baseUrl, String username, String password,
+			Map<String, String> proxyConfig) {
+		ClientKey key = ClientKey.of(baseUrl, username, password, proxyConfig);
+		return clients.get(key, k -> {
+			LOGGER.fine(() -> "[SecretServerClientRegistry] Creating client for " + k);
+			return SecretServerClient.create(k, password, proxyConfig);
+		});
+	}
+
+	/**
+	 * Closes the clients of {@code username} whose password is none of
+	 * {@code passwords}, to be called with the passwords a credentials store now
+	 * holds for that account when it is saved.
+	 */
+	public void evictOtherPasswords(String username, Set<String> passwords) {
+		Set<String> digests = passwords.stream().map(ClientKey::digest).collect(Collectors.toSet());
+		clients.asMap().keySet().removeIf(
+				key -> key.getUsername().equals(username) && !digests.contains(key.getPasswordDigest()));
+	}
+
+	/**
+	 * Drops every cached client. Clients are closed after a grace period rather
+	 * than immediately since other builds may still be using them.
+	 */
+	public void invalidateAll() {
+		clients.invalidateAll();
+		AccessTokenCache.get().invalidateAll();
+		SecretValueCache.get().invalidateAll();
+	}
+
+	private static void closeQuietly(SecretServerClient client) {
+		try {
+			client.close();
+		} catch (RuntimeException e) {
+			LOGGER.log(Level.FINE, "[SecretServerClientRegistry] Failed to close client for " + client.getKey(), e);
+		}
+	}
+}
@@ -0,0 +1,165 @@
+package com.delinea.secrets.jenkins.client;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import com.delinea.server.spring.Secret;
+
+/**
+ * The field values of a secret as they were when it was fetched. This is what
+ * the plugin caches, rather than the SDK's {@link Secret}, so that cached
+ * values do not depend on the SDK's model.
+ * <p>
+ * Field values are kept in {@link SecretBytes}, outside the heap, and decoded
+ * each time they are read. A snapshot is reference counted like the
+ * {@link SecretBytes} it holds: whoever obtains one from {@link #of(int, Secret)}
+ * or from a cache owns a reference and gives it back with {@link #release()}
+ * once the values have been used, which zeroes them if nothing else holds
+ * the snapshot.
+ */
+public final class SecretSnapshot {
+	private final int id;
+	private final List<Field> fields;
+	private final SecretBytes values;
+
+	/**
+	 * @param fields - Fields carrying their values; the values are moved into
+	 *               {@link SecretBytes} and the given fields are not kept.
+	 */
+	SecretSnapshot(int id, List<Field> fields) {
+		this(id, fields, SecretBytes.of(values(fields)));
+	}
+
+	/**
+	 * @param fields - The names and slugs of the fields, whose values are
+	 *               ignored.
+	 * @param values - The value of each field, in the same order; this snapshot
+	 *               takes over the caller's reference.
+	 */
+	SecretSnapshot(int id, List<Field> fields, SecretBytes values) {
+		this.id = id;
+		this.values = values;
+		List<Field> held = new ArrayList<>(fields.size());
+		for (int i = 0; i < fields.size(); i++) {
+			held.add(new Field(fields.get(i).fieldName, fields.get(i).slug, values, i));
+		}
+		this.fields = Collections.unmodifiableList(held);
+	}
+
+	private static List<String> values(List<Field> fields) {
+		List<String> plain = new ArrayList<>(fields.size());
+		for (Field field : fields) {
+			plain.add(field.value);
+		}
+		return plain;
+	}
+
+	public static SecretSnapshot of(int id, Secret secret) {
+		List<Field> fields = new ArrayList<>(secret.getFields().size());
+		for (Secret.Field field : secret.getFields()) {
+			fields.add(new Field(field.getFieldName(), field.getSlug(), field.getValue()));
+		}
+		return new SecretSnapshot(id, fields);
+	}
+
+	public int getId() {
+		return id;
+	}
+
+	public List<Field> getFields() {
+		return fields;
+	}
+
+	/**
+	 * @param nameOrSlug a field name or slug, compared case-insensitively
+	 * @return the value of the first matching field, or {@code null}
+	 */
+	public String getValue(String nameOrSlug) {
+		for (Field field : fields) {
+			if (field.matches(nameOrSlug)) {
+				return field.getValue();
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Takes another reference to this snapshot.
+	 *
+	 * @return {@code false} if it has already been released for the last time
+	 *         and can no longer be read
+	 */
+	public boolean tryRetain() {
+		return values.tryRetain();
+	}
+
+	/**
+	 * Gives back a reference to this snapshot, zeroing its values if it was the
+	 * last one.
+	 */
+	public void release() {
+		values.release();
+	}
+
+	public static final class Field {
+		private final String fieldName;
+		private final String slug;
+		/** Only set on fields not yet part of a snapshot. */
+		private final String value;
+		private final SecretBytes values;
+		private final int index;
+
+		Field(String fieldName, String slug, String value) {
+			this.fieldName = fieldName;
+			this.slug = slug;
+			this.value = value;
+			this.values = null;
+			this.index = -1;
+		}
+
+		private Field(String fieldName, String slug, SecretBytes values, int index) {
+			this.fieldName = fieldName;
+			this.slug = slug;
+			this.value = null;
+			this.values = values;
+			this.index = index;
+		}
+
+		public String getFieldName() {
+			return fieldName;
+		}
+
+		public String getSlug() {
+			return slug;
+		}
+
+		/**
+		 * Decodes the value; callers should not hold on to it longer than needed.
+		 *
+		 * @throws IllegalStateException if the snapshot has been released
+		 */
+		public String getValue() {
+			return values != null ? values.getString(index) : value;
+		}
+
+		/**
+		 * @return the value as characters the caller should overwrite once done
+		 *         with them
+		 * @throws IllegalStateException if the snapshot has been released
+		 */
+		public char[] getChars() {
+			return values != null ? values.getChars(index) : value == null ? null : value.toCharArray();
+		}
+
+		byte[] getBytes() {
+			return values != null ? values.getBytes(index)
+					: value == null ? null : value.getBytes(StandardCharsets.UTF_8);
+		}
+
+		public boolean matches(String nameOrSlug) {
+			return nameOrSlug != null && (nameOrSlug.equalsIgnoreCase(fieldName) || nameOrSlug.equalsIgnoreCase(slug));
+		}
+	}
+}
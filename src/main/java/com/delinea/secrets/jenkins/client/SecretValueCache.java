@@ -0,0 +1,353 @@
+package com.delinea.secrets.jenkins.client;
+
+import java.time.Duration;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.annotation.CheckForNull;
+
+import org.apache.commons.lang3.StringUtils;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.delinea.secrets.jenkins.metrics.SecretServerMetrics;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import com.github.benmanes.caffeine.cache.Scheduler;
+
+/**
+ * Controller-wide cache of secret values keyed by (base URL, service account,
+ * secret id), bounded in size with Caffeine's W-TinyLFU eviction and expired
+ * after a configurable time to live. A time to live of zero disables caching.
+ * <p>
+ * Optionally the cache serves stale values while revalidating them: a value
+ * past its time to live is returned straight away while a single background
+ * load replaces it, for up to a grace period after it expired. If Secret
+ * Server cannot be reached the stale value therefore stays usable for the
+ * whole grace period, and callers are told each time they receive one.
+ * <p>
+ * If {@link PersistentSecretCache} is enabled, every value loaded is also
+ * written to disk, and a miss is first looked up there. A value restored from
+ * disk is served for the rest of its time to live, counted from when it was
+ * originally fetched, and is revalidated in the background the first time it
+ * is used.
+ * <p>
+ * The cache holds a reference to each {@link SecretSnapshot} it keeps and
+ * releases it when the value is evicted, expires, is replaced or the cache is
+ * invalidated, which zeroes the value unless a caller is still using it. Every
+ * snapshot returned by {@link #get} is a reference of the caller's own, to be
+ * released once its values have been read.
+ * <p>
+ * The cache does not check permissions itself: callers must resolve the
+ * credential for the current context, which applies the usual
+ * {@link hudson.model.Item#READ} and
+ * {@link com.cloudbees.plugins.credentials.CredentialsProvider#VIEW} checks,
+ * before asking for a value. Values are keyed by the account that credential
+ * holds rather than by its id, since folders may each define a credential of
+ * the same id for a different account; as with {@link ClientKey}, the password
+ * only takes part as a digest.
+ */
+public final class SecretValueCache {
+	private static final Logger LOGGER = Logger.getLogger(SecretValueCache.class.getName());
+
+	private static final SecretValueCache INSTANCE = new SecretValueCache();
+
+	private volatile Settings settings = new Settings(0, 0, false, 0);
+	private volatile Cache<Key, Entry> cache;
+	private final ConcurrentHashMap.KeySetView<Key, Boolean> refreshing = ConcurrentHashMap.newKeySet();
+	/** Bumped by {@link #invalidateAll()} so a refresh started before it cannot repopulate the cache. */
+	private final AtomicLong generation = new AtomicLong();
+
+	private SecretValueCache() {
+	}
+
+	public static SecretValueCache get() {
+		return INSTANCE;
+	}
+
+	/**
+	 * Loads a secret from Secret Server on a cache miss.
+	 */
+	public interface Loader {
+		SecretSnapshot load() throws Exception;
+	}
+
+	/**
+	 * Applies the cache settings from the global configuration. Changing them
+	 * discards every cached value.
+	 *
+	 * @param ttlSeconds           - How long a value is served from the cache, 0 to
+	 *                             disable.
+	 * @param maxEntries           - How many values are kept at most.
+	 * @param staleWhileRevalidate - Whether expired values are served while they
+	 *                             are refreshed.
+	 * @param staleGraceSeconds    - How long after expiring a value may still be
+	 *                             served.
+	 */
+	public synchronized void configure(int ttlSeconds, int maxEntries, boolean staleWhileRevalidate,
+			int staleGraceSeconds) {
+		Settings updated = new Settings(ttlSeconds, maxEntries, staleWhileRevalidate, staleGraceSeconds);
+		if (updated.equals(settings)) {
+			return;
+		}
+		settings = updated;
+		generation.incrementAndGet();
+		Cache<Key, Entry> previous = cache;
+		cache = updated.ttlSeconds > 0 ? Caffeine.newBuilder().maximumSize(updated.maxEntries)
+				.expireAfterWrite(Duration.ofSeconds(updated.ttlSeconds + updated.staleGraceSeconds))
+				// expire on time rather than on the next access, so expired values are zeroed promptly
+				.scheduler(Scheduler.systemScheduler())
+				.removalListener((Key key, Entry entry, RemovalCause cause) -> {
+					if (entry != null) {
+						entry.snapshot.release();
+					}
+				}).build()
+				: null;
+		if (previous != null) {
+			previous.invalidateAll();
+		}
+		LOGGER.fine(() -> "[SecretValueCache] TTL " + updated.ttlSeconds + "s, max entries " + updated.maxEntries
+				+ ", stale grace " + updated.staleGraceSeconds + "s");
+	}
+
+	/**
+	 * Returns the cached value for this secret, calling the loader if there is
+	 * none. Concurrent misses for the same key share one load. The caller owns
+	 * a reference to the returned snapshot and must
+	 * {@link SecretSnapshot#release() release} it.
+	 *
+	 * @param username - The service account the value is fetched as.
+	 * @param password - The password of that account.
+	 * @param onStale  - Told the age of the value whenever a stale value is
+	 *                 returned; may be {@code null}.
+	 */
+	public SecretSnapshot get(String baseUrl, String username, String password, String secretId, Loader loader,
+			@CheckForNull Consumer<Duration> onStale) throws Exception {
+		Cache<Key, Entry> current = cache;
+		Settings currentSettings = settings;
+		if (current == null) {
+			return loader.load();
+		}
+		Key key = new Key(baseUrl, username, password, secretId);
+		Entry cached = current.getIfPresent(key);
+		if (cached != null && cached.age().getSeconds() >= currentSettings.ttlSeconds
+				+ currentSettings.staleGraceSeconds) {
+			// restored from disk with less time left than Caffeine allows for
+			current.invalidate(key);
+			cached = null;
+		}
+		if (cached != null && cached.snapshot.tryRetain()) {
+			Duration age = cached.age();
+			if (currentSettings.staleGraceSeconds == 0 || age.getSeconds() < currentSettings.ttlSeconds) {
+				SecretServerMetrics.get().cacheHit(SecretServerMetrics.Cache.SECRET_VALUE);
+				if (cached.restored) {
+					refreshInBackground(current, key, loader);
+				}
+				return cached.snapshot;
+			}
+			SecretServerMetrics.get().staleHit(SecretServerMetrics.Cache.SECRET_VALUE);
+			refreshInBackground(current, key, loader);
+			LOGGER.fine(() -> "[SecretValueCache] Serving secret " + secretId + " from " + age.getSeconds()
+					+ "s ago while it is refreshed");
+			if (onStale != null) {
+				onStale.accept(age);
+			}
+			return cached.snapshot;
+		}
+		long startedIn = generation.get();
+		Entry loaded;
+		try {
+			loaded = current.get(key, k -> {
+				Entry restored = restore(k, currentSettings);
+				if (restored != null) {
+					return restored;
+				}
+				SecretServerMetrics.get().cacheMiss(SecretServerMetrics.Cache.SECRET_VALUE);
+				try {
+					Entry entry = new Entry(loader.load());
+					persist(k, entry, currentSettings, startedIn);
+					return entry;
+				} catch (RuntimeException e) {
+					throw e;
+				} catch (Exception e) {
+					throw new LoadException(e);
+				}
+			});
+		} catch (LoadException e) {
+			throw (Exception) e.getCause();
+		}
+		if (!loaded.snapshot.tryRetain()) {
+			// evicted, and so released, as soon as it was loaded
+			return loader.load();
+		}
+		if (loaded.restored) {
+			refreshInBackground(current, key, loader);
+			Duration age = loaded.age();
+			if (age.getSeconds() >= currentSettings.ttlSeconds && onStale != null) {
+				onStale.accept(age);
+			}
+		}
+		return loaded.snapshot;
+	}
+
+	/**
+	 * @return the value persisted for this key, if it may still be served
+	 */
+	private static Entry restore(Key key, Settings settings) {
+		PersistentSecretCache persistent = PersistentSecretCache.get();
+		if (!persistent.isEnabled()) {
+			return null;
+		}
+		PersistentSecretCache.Stored stored = persistent.read(key.baseUrl, key.account, key.secretId);
+		if (stored == null || stored.age().getSeconds() >= settings.ttlSeconds + settings.staleGraceSeconds) {
+			return null;
+		}
+		SecretServerMetrics.get().cacheHit(SecretServerMetrics.Cache.SECRET_VALUE);
+		LOGGER.fine(() -> "[SecretValueCache] Restored secret " + key.secretId + " from disk");
+		return new Entry(stored.getSnapshot(), stored.age(), true);
+	}
+
+	private void persist(Key key, Entry entry, Settings settings, long startedIn) {
+		if (!PersistentSecretCache.get().isEnabled() || !entry.snapshot.tryRetain()) {
+			return;
+		}
+		try {
+			SecretFetchExecutor.get().execute(() -> {
+				try {
+					if (generation.get() == startedIn) {
+						PersistentSecretCache.get().write(key.baseUrl, key.account, key.secretId,
+								entry.snapshot, Duration.ofSeconds(settings.ttlSeconds + settings.staleGraceSeconds));
+					}
+				} finally {
+					entry.snapshot.release();
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			entry.snapshot.release();
+			LOGGER.log(Level.FINE, "[SecretValueCache] Not persisting secret " + key.secretId, e);
+		}
+	}
+
+	private void refreshInBackground(Cache<Key, Entry> current, Key key, Loader loader) {
+		if (!refreshing.add(key)) {
+			return;
+		}
+		long startedIn = generation.get();
+		try {
+			SecretFetchExecutor.get().execute(() -> {
+				try {
+					Entry loaded = new Entry(loader.load());
+					if (generation.get() == startedIn) {
+						current.put(key, loaded);
+						persist(key, loaded, settings, startedIn);
+					} else {
+						loaded.snapshot.release();
+					}
+				} catch (Exception e) {
+					// keep serving the stale value until its grace period ends
+					LOGGER.log(Level.FINE, "[SecretValueCache] Refresh of secret " + key.secretId + " failed", e);
+				} finally {
+					refreshing.remove(key);
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			refreshing.remove(key);
+		}
+	}
+
+	public void invalidateAll() {
+		generation.incrementAndGet();
+		Cache<Key, Entry> current = cache;
+		if (current != null) {
+			current.invalidateAll();
+		}
+		PersistentSecretCache.get().clear();
+	}
+
+	private static final class Settings {
+		private final int ttlSeconds;
+		private final int maxEntries;
+		/** Zero unless stale values are allowed. */
+		private final int staleGraceSeconds;
+
+		Settings(int ttlSeconds, int maxEntries, boolean staleWhileRevalidate, int staleGraceSeconds) {
+			this.ttlSeconds = Math.max(0, ttlSeconds);
+			this.maxEntries = Math.max(1, maxEntries);
+			this.staleGraceSeconds = staleWhileRevalidate ? Math.max(0, staleGraceSeconds) : 0;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			return o instanceof Settings && ((Settings) o).ttlSeconds == ttlSeconds
+					&& ((Settings) o).maxEntries == maxEntries
+					&& ((Settings) o).staleGraceSeconds == staleGraceSeconds;
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(ttlSeconds, maxEntries, staleGraceSeconds);
+		}
+	}
+
+	private static final class Entry {
+		private final SecretSnapshot snapshot;
+		private final long loadedAt;
+		/** Whether the value was read from disk rather than from Secret Server. */
+		private final boolean restored;
+
+		Entry(SecretSnapshot snapshot) {
+			this(snapshot, Duration.ZERO, false);
+		}
+
+		Entry(SecretSnapshot snapshot, Duration age, boolean restored) {
+			this.snapshot = snapshot;
+			this.loadedAt = System.nanoTime() - age.toNanos();
+			this.restored = restored;
+		}
+
+		Duration age() {
+			return Duration.ofNanos(System.nanoTime() - loadedAt);
+		}
+	}
+
+	private static final class Key {
+		private final String baseUrl;
+		/** The username and the digest of the password. */
+		private final String account;
+		private final String secretId;
+
+		Key(String baseUrl, String username, String password, String secretId) {
+			this.baseUrl = StringUtils.removeEnd(StringUtils.trimToEmpty(baseUrl), "/");
+			this.account = StringUtils.defaultString(username) + '\0' + ClientKey.digest(password);
+			this.secretId = StringUtils.trimToEmpty(secretId);
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof Key)) {
+				return false;
+			}
+			Key other = (Key) o;
+			return baseUrl.equals(other.baseUrl) && account.equals(other.account)
+					&& secretId.equals(other.secretId);
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(baseUrl, account, secretId);
+		}
+	}
+
+	/** Carries a checked loader failure through Caffeine. */
+	private static final class LoadException extends RuntimeException {
+		private static final long serialVersionUID = 1L;
+
+		LoadException(Exception cause) {
+			super(cause);
+		}
+	}
+}
@@ -0,0 +1,149 @@
+package com.delinea.secrets.jenkins.client;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Supplier;
+
+/**
+ * Coalesces concurrent calls for the same key: the first caller performs the
+ * call and every caller that arrives while it is in flight waits for, and
+ * receives, the same result or failure.
+ */
+final class SingleFlight<K, V> {
+	private final ConcurrentMap<K, CompletableFuture<V>> calls = new ConcurrentHashMap<>();
+	private final ConcurrentMap<K, AsyncCall<V>> asyncCalls = new ConcurrentHashMap<>();
+
+	/**
+	 * A call that may block, as {@link FaultTolerance.Attempt} does.
+	 */
+	interface Call<V> {
+		V call() throws InterruptedException;
+	}
+
+	/**
+	 * @throws InterruptedException if this caller is interrupted; a caller that
+	 *                              was waiting on another one that got
+	 *                              interrupted makes the call itself instead
+	 */
+	V execute(K key, Call<V> call) throws InterruptedException {
+		while (true) {
+			CompletableFuture<V> created = new CompletableFuture<>();
+			CompletableFuture<V> inFlight = calls.putIfAbsent(key, created);
+			if (inFlight == null) {
+				try {
+					V value = call.call();
+					created.complete(value);
+					return value;
+				} catch (InterruptedException | RuntimeException | Error e) {
+					created.completeExceptionally(e);
+					throw e;
+				} finally {
+					calls.remove(key, created);
+				}
+			}
+			try {
+				return inFlight.get();
+			} catch (ExecutionException e) {
+				Throwable cause = e.getCause();
+				if (cause instanceof InterruptedException) {
+					continue;
+				}
+				if (cause instanceof RuntimeException) {
+					throw (RuntimeException) cause;
+				}
+				if (cause instanceof Error) {
+					throw (Error) cause;
+				}
+				throw new IllegalStateException(cause);
+			}
+		}
+	}
+
+	/**
+	 * Like {@link #execute}, for calls that do not block. Each caller receives a
+	 * future of its own, which it may cancel or time out without affecting the
+	 * others; the shared call is only cancelled once every caller has given up
+	 * on it.
+	 */
+	CompletableFuture<V> executeAsync(K key, Supplier<CompletableFuture<V>> call) {
+		while (true) {
+			AsyncCall<V> created = new AsyncCall<>();
+			AsyncCall<V> inFlight = asyncCalls.putIfAbsent(key, created);
+			if (inFlight == null) {
+				created.result.whenComplete((value, failure) -> asyncCalls.remove(key, created));
+				CompletableFuture<V> joined = created.join();
+				if (joined == null) {
+					// joined and given up on by another caller before it even started
+					continue;
+				}
+				created.start(call);
+				return joined;
+			}
+			CompletableFuture<V> joined = inFlight.join();
+			if (joined != null) {
+				return joined;
+			}
+			// every caller gave up on it just now; make the call again
+			asyncCalls.remove(key, inFlight);
+		}
+	}
+
+	private static final class AsyncCall<V> {
+		private final CompletableFuture<V> result = new CompletableFuture<>();
+		private int callers;
+		private boolean abandoned;
+
+		void start(Supplier<CompletableFuture<V>> call) {
+			CompletableFuture<V> inProgress;
+			try {
+				inProgress = call.get();
+			} catch (RuntimeException e) {
+				inProgress = CompletableFuture.failedFuture(e);
+			}
+			CompletableFuture<V> started = inProgress;
+			result.whenComplete((value, failure) -> started.cancel(true));
+			started.whenComplete((value, failure) -> {
+				if (failure == null) {
+					result.complete(value);
+				} else {
+					result.completeExceptionally(failure instanceof CompletionException && failure.getCause() != null
+							? failure.getCause()
+							: failure);
+				}
+			});
+		}
+
+		/** @return the caller's own future, or {@code null} if the call was abandoned */
+		synchronized CompletableFuture<V> join() {
+			if (abandoned) {
+				return null;
+			}
+			callers++;
+			CompletableFuture<V> own = new CompletableFuture<>();
+			result.whenComplete((value, failure) -> {
+				if (failure == null) {
+					own.complete(value);
+				} else {
+					own.completeExceptionally(failure);
+				}
+			});
+			own.whenComplete((value, failure) -> {
+				if (!result.isDone()) {
+					// cancelled or timed out by this caller
+					leave();
+				}
+			});
+			return own;
+		}
+
+		private synchronized void leave() {
+			if (--callers == 0 && !result.isDone()) {
+				abandoned = true;
+				result.cancel(true);
+			}
+		}
+	}
+}
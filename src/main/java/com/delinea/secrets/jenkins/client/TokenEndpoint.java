@@ -0,0 +1,100 @@
+package com.delinea.secrets.jenkins.client;
+
+import java.net.URI;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.math.NumberUtils;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.client.ClientHttpRequestFactory;
+import org.springframework.util.LinkedMultiValueMap;
+import org.springframework.util.MultiValueMap;
+import org.springframework.web.client.RestClientException;
+import org.springframework.web.client.RestTemplate;
+
+import com.delinea.secrets.jenkins.metrics.SecretServerMetrics;
+
+/**
+ * Requests access tokens for a service account: the password grant of the
+ * Secret Server {@code /oauth2/token} endpoint, or the client credentials
+ * grant of the Platform identity service when the base URL is a Platform
+ * tenant.
+ * <p>
+ * This reimplements the token requests of the SDK's {@code SecretServer} and
+ * {@code AuthenticationService}, which do not expose the token or its
+ * lifetime, so that tokens can be cached by {@link AccessTokenCache}. Only the
+ * token request is replaced: the URL secrets are read from, including the
+ * vault URL the SDK discovers for a Platform tenant, is still the SDK's.
+ * Tenants are told apart by their host name ending in {@value #PLATFORM_HOST_SUFFIX}.
+ * The form fields, the {@code xpmheadless} scope and reading
+ * {@code access_token}, {@code token_type} and {@code expires_in} from the
+ * response follow the SDK, and have to be kept in line with it when the SDK
+ * is upgraded.
+ */
+final class TokenEndpoint {
+	private static final String PLATFORM_HOST_SUFFIX = ".delinea.app";
+	private static final String SECRET_SERVER_TOKEN_PATH = "/oauth2/token";
+	private static final String PLATFORM_TOKEN_PATH = "/identity/api/oauth2/token/xpmplatform";
+	private static final String PLATFORM_SCOPE = "xpmheadless";
+
+	/**
+	 * Used when the token response does not say how long the token lives for;
+	 * this is the Secret Server default.
+	 */
+	private static final Duration DEFAULT_LIFETIME = Duration.ofMinutes(20);
+
+	private final RestTemplate restTemplate;
+	private final String url;
+	private final MultiValueMap<String, String> form = new LinkedMultiValueMap<>();
+
+	TokenEndpoint(ClientKey key, String password, ClientHttpRequestFactory requestFactory) {
+		this.restTemplate = new RestTemplate(requestFactory);
+		if (isPlatform(key.getBaseUrl())) {
+			this.url = key.getBaseUrl() + PLATFORM_TOKEN_PATH;
+			form.add("grant_type", "client_credentials");
+			form.add("client_id", key.getUsername());
+			form.add("client_secret", password);
+			form.add("scope", PLATFORM_SCOPE);
+		} else {
+			this.url = key.getBaseUrl() + SECRET_SERVER_TOKEN_PATH;
+			form.add("grant_type", "password");
+			form.add("username", key.getUsername());
+			form.add("password", password);
+		}
+	}
+
+	static boolean isPlatform(String baseUrl) {
+		try {
+			String host = URI.create(baseUrl).getHost();
+			return host != null && StringUtils.endsWithIgnoreCase(host, PLATFORM_HOST_SUFFIX);
+		} catch (IllegalArgumentException e) {
+			return false;
+		}
+	}
+
+	AccessToken requestToken() {
+		HttpHeaders headers = new HttpHeaders();
+		headers.setContentType(MediaType.APPLICATION_FORM_URLENCODED);
+		Instant issuedAt = Instant.now();
+		long start = System.nanoTime();
+		try {
+			Map<?, ?> response = restTemplate.postForObject(url, new HttpEntity<>(form, headers), Map.class);
+			Object accessToken = response == null ? null : response.get("access_token");
+			if (accessToken == null) {
+				throw new RestClientException("Token response from " + url + " did not contain an access token");
+			}
+			Object tokenType = response.get("token_type");
+			long expiresIn = NumberUtils.toLong(String.valueOf(response.get("expires_in")), 0);
+			SecretServerMetrics.get().succeeded(SecretServerMetrics.Operation.AUTHENTICATE, start);
+			return new AccessToken(tokenType == null ? "Bearer" : tokenType.toString(), accessToken.toString(),
+					issuedAt, expiresIn > 0 ? Duration.ofSeconds(expiresIn) : DEFAULT_LIFETIME);
+		} catch (RuntimeException e) {
+			SecretServerMetrics.get().failed(SecretServerMetrics.Operation.AUTHENTICATE, start, e);
+			throw e;
+		}
+	}
+}
@@ -1,7 +1,9 @@
 package com.delinea.secrets.jenkins.global.cred;
 
 import java.io.IOException;
-import java.util.Collections;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
 
 import javax.annotation.Nullable;
 import javax.servlet.ServletException;
@@ -12,19 +14,26 @@ import org.kohsuke.stapler.DataBoundConstructor;
 import org.kohsuke.stapler.QueryParameter;
 import org.kohsuke.stapler.Stapler;
 import org.kohsuke.stapler.verb.POST;
+import org.springframework.security.core.Authentication;
 
 import com.cloudbees.plugins.credentials.CredentialsProvider;
 import com.cloudbees.plugins.credentials.CredentialsScope;
 import com.cloudbees.plugins.credentials.common.StandardCredentials;
 import com.cloudbees.plugins.credentials.common.StandardListBoxModel;
 import com.cloudbees.plugins.credentials.impl.UsernamePasswordCredentialsImpl;
+import com.delinea.secrets.jenkins.client.RefreshingValue;
+import com.delinea.secrets.jenkins.client.SecretFetchExecutor;
+import com.delinea.secrets.jenkins.client.SecretSnapshot;
+import com.delinea.secrets.jenkins.client.SecretValueCache;
 import com.delinea.secrets.jenkins.global.cred.VaultClient.UsernamePassword;
+import com.delinea.secrets.jenkins.wrapper.cred.ServerConfiguration;
 import com.delinea.secrets.jenkins.wrapper.cred.UserCredentials;
 
 import hudson.Extension;
 import hudson.model.Item;
 import hudson.model.Descriptor.FormException;
 import hudson.security.ACL;
+import hudson.security.ACLContext;
 import hudson.util.FormValidation;
 import hudson.util.ListBoxModel;
 import hudson.util.Secret;
@@ -32,12 +41,16 @@ import jenkins.model.Jenkins;
 
 public class SecretServerCredentials extends UsernamePasswordCredentialsImpl implements StandardCredentials {
 	private static final long serialVersionUID = 1L;
+	private static final Logger LOGGER = Logger.getLogger(SecretServerCredentials.class.getName());
+	/** Set from {@link ServerConfiguration}, so that lookups served from memory need not consult it. */
+	private static volatile long refreshAfterNanos = TimeUnit.SECONDS
+			.toNanos(ServerConfiguration.DEFAULT_CREDENTIAL_REFRESH_SECONDS);
 	private final String usernameSlug;
 	private final String passwordSlugName;
 	private final String vaultUrl;
 	private final String credentialId;
 	private final String secretId;
-	private transient UsernamePassword vaultCredential;
+	private transient volatile RefreshingValue<UsernamePassword> vaultCredential;
 	private final String proxyHost;
 	private final String proxyPort;
 	private final String proxyUsername;
@@ -65,7 +78,6 @@ public class SecretServerCredentials extends UsernamePasswordCredentialsImpl imp
 		this.vaultUrl = vaultUrl;
 		this.credentialId = credentialId;
 		this.secretId = secretId;
-		this.vaultCredential = null;
 		this.proxyHost = proxyHost;
 		this.proxyPort = proxyPort;
 		this.proxyUsername = proxyUsername;
@@ -125,7 +137,7 @@ public class SecretServerCredentials extends UsernamePasswordCredentialsImpl imp
 	 */
 	@Override
 	public String getUsername() {
-		return getVaultCredential(getContextItem()).getUsername();
+		return getVaultCredential().getUsername();
 	}
 
 	/**
@@ -136,7 +148,17 @@ public class SecretServerCredentials extends UsernamePasswordCredentialsImpl imp
 	 */
 	@Override
 	public Secret getPassword() {
-		return Secret.fromString(getVaultCredential(getContextItem()).getPassword());
+		return getVaultCredential().getPasswordSecret();
+	}
+
+	/**
+	 * Applies the credential refresh interval from the global configuration.
+	 *
+	 * @param seconds - How long fetched credentials are used before they are
+	 *                refreshed, 0 to keep them.
+	 */
+	public static void setRefreshInterval(int seconds) {
+		refreshAfterNanos = TimeUnit.SECONDS.toNanos(Math.max(0, seconds));
 	}
 
 	@Nullable
@@ -152,34 +174,73 @@ public class SecretServerCredentials extends UsernamePasswordCredentialsImpl imp
     }
 
 	/**
-	 * Fetches the credentials (username and password) from the Secret Server only
-	 * once and caches it.
+	 * Fetches the credentials (username and password) from the Secret Server and
+	 * caches them, refreshing them in the background once they are older than the
+	 * configured refresh interval. Concurrent callers share a single fetch. A
+	 * value within the refresh interval is returned without allocating.
 	 *
 	 * @return The UsernamePassword object containing the fetched credentials.
 	 * @throws RuntimeException if the credentials cannot be fetched from the Secret
 	 *                          Server.
 	 */
-	private UsernamePassword getVaultCredential(@Nullable Item contextItem) {
-		if (vaultCredential == null) {
-			try {
-				UserCredentials credential = UserCredentials.get(credentialId, contextItem);
-				if (credential == null) {
-					throw new RuntimeException(
-							"UserCredentials with the specified credentialId not found in the folder context.");
+	private UsernamePassword getVaultCredential() {
+		long refreshAfter = refreshAfterNanos;
+		UsernamePassword fresh = vaultCredential().getIfFresh(refreshAfter);
+		if (fresh != null) {
+			return fresh;
+		}
+		Item contextItem = getContextItem();
+		// background refreshes look the credential up as the caller did, so they are subject to the same checks
+		Authentication authentication = Jenkins.getAuthentication2();
+		try {
+			return vaultCredential().get(() -> {
+				try (ACLContext ignored = ACL.as2(authentication)) {
+					return fetchVaultCredential(contextItem);
+				}
+			}, Duration.ofNanos(refreshAfter), SecretFetchExecutor.get());
+		} catch (Exception e) {
+			throw new RuntimeException("Failed to fetch credentials from vault. " + e.getMessage());
+		}
+	}
+
+	RefreshingValue<UsernamePassword> vaultCredential() {
+		RefreshingValue<UsernamePassword> value = vaultCredential;
+		if (value == null) {
+			synchronized (this) {
+				value = vaultCredential;
+				if (value == null) {
+					vaultCredential = value = new RefreshingValue<>();
 				}
-				String ph = useProxy ? proxyHost : null;
-				String pp = useProxy ? proxyPort : null;
-				String pu = useProxy ? proxyUsername : null;
-				String pw = (useProxy && proxyPassword != null) ? proxyPassword.getPlainText() : null;
-				String nph = useProxy ? noProxyHosts : null;
-	                
-				vaultCredential = new VaultClient().fetchCredentials(vaultUrl, secretId, credential.getUsername(),
-						credential.getPassword().getPlainText(), usernameSlug, passwordSlugName,  ph, pp, pu, pw, nph);
-			} catch (Exception e) {
-				throw new RuntimeException("Failed to fetch credentials from vault. " + e.getMessage());
 			}
 		}
-		return vaultCredential;
+		return value;
+	}
+
+	private UsernamePassword fetchVaultCredential(@Nullable Item contextItem) throws Exception {
+		UserCredentials credential = UserCredentials.get(credentialId, contextItem);
+		if (credential == null) {
+			throw new RuntimeException(
+					"UserCredentials with the specified credentialId not found in the folder context.");
+		}
+		String ph = useProxy ? proxyHost : null;
+		String pp = useProxy ? proxyPort : null;
+		String pu = useProxy ? proxyUsername : null;
+		String pw = (useProxy && proxyPassword != null) ? proxyPassword.getPlainText() : null;
+		String nph = useProxy ? noProxyHosts : null;
+
+		String username = credential.getUsername();
+		String password = credential.getPassword().getPlainText();
+
+		// the credential lookup above has applied the permission checks, so a cached value may be served
+		SecretSnapshot secret = SecretValueCache.get().get(vaultUrl, username, password, secretId,
+				() -> new VaultClient().fetchSecret(vaultUrl, secretId, username, password, ph, pp, pu, pw, nph),
+				age -> LOGGER.warning(() -> "[SecretServerCredentials] Using cached value of secret " + secretId
+						+ " for credentials " + getId() + " fetched " + age.getSeconds() + "s ago; it is being refreshed"));
+		try {
+			return VaultClient.toUsernamePassword(secret, usernameSlug, passwordSlugName);
+		} finally {
+			secret.release();
+		}
 	}
 
 	@Extension
@@ -222,8 +283,7 @@ public class SecretServerCredentials extends UsernamePasswordCredentialsImpl imp
 				return FormValidation.error("Credential ID is required.");
 			}
 			// Check if the Credential ID exists within the specified item context
-			if (CredentialsProvider.lookupCredentials(UserCredentials.class, item, ACL.SYSTEM, Collections.emptyList())
-					.stream().noneMatch(cred -> cred.getId().equals(value))) {
+			if (UserCredentials.lookup(value, item) == null) {
 				return FormValidation.error("Credential ID not found. Please provide a valid ID.");
 			}
 			return FormValidation.ok();
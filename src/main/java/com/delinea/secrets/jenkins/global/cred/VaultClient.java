@@ -1,101 +1,187 @@
 package com.delinea.secrets.jenkins.global.cred;
 
-import java.util.HashMap;
+import java.time.Duration;
 import java.util.Map;
-import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import javax.annotation.CheckForNull;
+
 import org.apache.commons.lang3.StringUtils;
-import org.springframework.context.annotation.AnnotationConfigApplicationContext;
-import org.springframework.core.env.MapPropertySource;
 
-import com.delinea.platform.service.AuthenticationService;
+import com.delinea.secrets.jenkins.client.SecretServerClient;
+import com.delinea.secrets.jenkins.client.SecretServerClientRegistry;
+import com.delinea.secrets.jenkins.client.SecretSnapshot;
 import com.delinea.secrets.jenkins.util.DelineaProxyUtil;
 import com.delinea.server.spring.Secret;
-import com.delinea.server.spring.SecretServer;
-import com.delinea.server.spring.SecretServerFactoryBean;
 
 public class VaultClient {
 	private static final Logger LOGGER = Logger.getLogger(VaultClient.class.getName());
 
-	private static final String USERNAME_PROPERTY = "server.username";
-	private static final String PASSWORD_PROPERTY = "server.password";
-	private static final String SERVER_URL_PROPERTY = "server.url";
-
 	public VaultClient() {
 	}
 
 	public UsernamePassword fetchCredentials(String vaultUrl, String secretId, String username, String password,
 			String usernameSlug, String passwordSlugName, String proxyHost, String proxyPort, String proxyUsername,
 			String proxyPassword, String noProxyHosts) throws Exception {
+		SecretSnapshot secret = fetchSecret(vaultUrl, secretId, username, password, proxyHost, proxyPort,
+				proxyUsername, proxyPassword, noProxyHosts);
+		try {
+			return toUsernamePassword(secret, usernameSlug, passwordSlugName);
+		} finally {
+			secret.release();
+		}
+	}
 
-		Map<String, Object> properties = new HashMap<>();
-		String trimmedUrl = StringUtils.removeEnd(vaultUrl, "/");
-
-		if (StringUtils.isNotBlank(trimmedUrl)) {
-			properties.put(SERVER_URL_PROPERTY, trimmedUrl);
+	/**
+	 * Picks the username and password out of a fetched secret.
+	 *
+	 * @return the username and password, or {@code null} if the secret does not
+	 *         have both fields
+	 */
+	public static UsernamePassword toUsernamePassword(SecretSnapshot secret, String usernameSlug,
+			String passwordSlugName) {
+		String fetchedUser = secret.getValue(usernameSlug);
+		String fetchedPass = secret.getValue(passwordSlugName);
+		if (fetchedUser != null && fetchedPass != null) {
+			return new UsernamePassword(fetchedUser, fetchedPass);
 		}
-		properties.put(USERNAME_PROPERTY, username);
-		properties.put(PASSWORD_PROPERTY, password);
+		LOGGER.warning("[VaultClient] Secret retrieved but missing expected username/password fields.");
+		return null;
+	}
+
+	/**
+	 * Fetches a secret, bypassing the secret cache.
+	 *
+	 * @return a snapshot the caller must {@link SecretSnapshot#release()
+	 *         release} once its values have been read
+	 */
+	public SecretSnapshot fetchSecret(String vaultUrl, String secretId, String username, String password,
+			String proxyHost, String proxyPort, String proxyUsername, String proxyPassword, String noProxyHosts)
+			throws Exception {
+
+		String trimmedUrl = StringUtils.removeEnd(vaultUrl, "/");
 
 		Map<String, String> proxyConfig = DelineaProxyUtil.resolveProxy(trimmedUrl, proxyHost, proxyPort, proxyUsername,
 				proxyPassword, noProxyHosts);
 
-		proxyConfig.forEach(properties::put);
-
-		try (AnnotationConfigApplicationContext context = new AnnotationConfigApplicationContext()) {
-			context.getEnvironment().getPropertySources().addLast(new MapPropertySource("properties", properties));
-			context.registerBean(SecretServerFactoryBean.class);
-			context.register(AuthenticationService.class);
-			try {
-				context.refresh();
-				SecretServer secretServer = context.getBean(SecretServer.class);
-
-				Secret secret = secretServer.getSecret(Integer.parseInt(secretId));
-				Optional<String> fetchedUser = secret.getFields().stream()
-						.filter(f -> usernameSlug.equalsIgnoreCase(f.getFieldName())
-								|| usernameSlug.equalsIgnoreCase(f.getSlug()))
-						.map(Secret.Field::getValue).findFirst();
-
-				Optional<String> fetchedPass = secret.getFields().stream()
-						.filter(f -> passwordSlugName.equalsIgnoreCase(f.getFieldName())
-								|| passwordSlugName.equalsIgnoreCase(f.getSlug()))
-						.map(Secret.Field::getValue).findFirst();
-
-				if (fetchedUser.isPresent() && fetchedPass.isPresent()) {
-					return new UsernamePassword(fetchedUser.get(), fetchedPass.get());
-				}
-				LOGGER.warning("[VaultClient] Secret retrieved but missing expected username/password fields.");
-				return null;
-
-			}  catch (Exception e) {
-			    Throwable root = e;
-			    while (root.getCause() != null) {
-			        root = root.getCause();
-			    }
-
-			    if (root instanceof java.net.UnknownHostException) {
-			        LOGGER.severe("[VaultClient] Host not found: " + root.getMessage());
-			    } else if (root instanceof org.springframework.web.client.HttpClientErrorException) {
-			        int status = ((org.springframework.web.client.HttpClientErrorException) root).getStatusCode().value();
-			        if (status == 407) {
-			            LOGGER.warning("[VaultClient] Proxy authentication failed (HTTP 407).");
-			        } else if (status == 400) {
-			            LOGGER.warning("[VaultClient] Access denied / invalid client credentials (HTTP 400).");
-			        } else {
-			            LOGGER.warning("[VaultClient] HTTP error (status " + status + ").");
-			        }
-			    } else if (root instanceof java.io.IOException) {
-			        LOGGER.severe("[VaultClient] Network I/O error: " + root.getMessage());
-			    } else {
-			        LOGGER.log(Level.SEVERE, "[VaultClient] Unexpected error: " + e.getMessage(), e);
-			    }
-			    throw e;
-			}
+		try {
+			SecretServerClient secretServer = SecretServerClientRegistry.get().getClient(trimmedUrl, username,
+					password, proxyConfig);
+
+			int id = Integer.parseInt(secretId);
+			return SecretSnapshot.of(id, secretServer.getSecret(id));
+		}  catch (Exception e) {
+		    logFailure(e);
+		    throw e;
 		}
 	}
 
+	/**
+	 * Like {@link #fetchCredentials}, but without blocking the calling thread.
+	 *
+	 * @param timeout - How long to wait for the secret, retries included, after
+	 *                which the future fails with a
+	 *                {@link java.util.concurrent.TimeoutException}; {@code null}
+	 *                to wait as long as the fetch deadline allows.
+	 * @return the username and password, or {@code null} if the secret does not
+	 *         have both fields
+	 */
+	public CompletableFuture<UsernamePassword> fetchCredentialsAsync(String vaultUrl, String secretId,
+			String username, String password, String usernameSlug, String passwordSlugName, String proxyHost,
+			String proxyPort, String proxyUsername, String proxyPassword, String noProxyHosts,
+			@CheckForNull Duration timeout) {
+		return fetchSecretAsync(vaultUrl, secretId, username, password, proxyHost, proxyPort, proxyUsername,
+				proxyPassword, noProxyHosts, timeout)
+				.thenApply(secret -> {
+					try {
+						return toUsernamePassword(secret, usernameSlug, passwordSlugName);
+					} finally {
+						secret.release();
+					}
+				});
+	}
+
+	/**
+	 * Like {@link #fetchSecret}, but without blocking the calling thread: the
+	 * request is sent by {@link SecretServerClient#getSecretAsync(int)}.
+	 * Cancelling the returned future aborts it. As with {@link #fetchSecret},
+	 * the caller must {@link SecretSnapshot#release() release} the snapshot.
+	 *
+	 * @param timeout - How long to wait for the secret, retries included, after
+	 *                which the future fails with a
+	 *                {@link java.util.concurrent.TimeoutException}; {@code null}
+	 *                to wait as long as the fetch deadline allows.
+	 */
+	public CompletableFuture<SecretSnapshot> fetchSecretAsync(String vaultUrl, String secretId, String username,
+			String password, String proxyHost, String proxyPort, String proxyUsername, String proxyPassword,
+			String noProxyHosts, @CheckForNull Duration timeout) {
+		CompletableFuture<Secret> secret;
+		int id;
+		try {
+			String trimmedUrl = StringUtils.removeEnd(vaultUrl, "/");
+			Map<String, String> proxyConfig = DelineaProxyUtil.resolveProxy(trimmedUrl, proxyHost, proxyPort,
+					proxyUsername, proxyPassword, noProxyHosts);
+			id = Integer.parseInt(secretId);
+			secret = SecretServerClientRegistry.get().getClient(trimmedUrl, username, password, proxyConfig)
+					.getSecretAsync(id);
+		} catch (RuntimeException e) {
+			logFailure(e);
+			return CompletableFuture.failedFuture(e);
+		}
+		if (timeout != null) {
+			secret.orTimeout(timeout.toMillis(), TimeUnit.MILLISECONDS);
+		}
+		CompletableFuture<SecretSnapshot> snapshot = secret.thenApply(s -> SecretSnapshot.of(id, s));
+		snapshot.whenComplete((value, failure) -> {
+			if (failure == null) {
+				return;
+			}
+			if (snapshot.isCancelled()) {
+				secret.cancel(true);
+			} else {
+				logFailure(failure instanceof CompletionException && failure.getCause() != null
+						? failure.getCause()
+						: failure);
+			}
+		});
+		return snapshot;
+	}
+
+	private static void logFailure(Throwable e) {
+	    Throwable root = e;
+	    while (root.getCause() != null) {
+	        root = root.getCause();
+	    }
+
+	    if (root instanceof java.net.UnknownHostException) {
+	        LOGGER.severe("[VaultClient] Host not found: " + root.getMessage());
+	    } else if (root instanceof org.springframework.web.client.HttpClientErrorException) {
+	        int status = ((org.springframework.web.client.HttpClientErrorException) root).getStatusCode().value();
+	        if (status == 407) {
+	            LOGGER.warning("[VaultClient] Proxy authentication failed (HTTP 407).");
+	        } else if (status == 400) {
+	            LOGGER.warning("[VaultClient] Access denied / invalid client credentials (HTTP 400).");
+	        } else {
+	            LOGGER.warning("[VaultClient] HTTP error (status " + status + ").");
+	        }
+	    } else if (root instanceof java.util.concurrent.TimeoutException) {
+	        LOGGER.warning("[VaultClient] Timed out waiting for Secret Server.");
+	    } else if (root instanceof java.io.IOException) {
+	        LOGGER.severe("[VaultClient] Network I/O error: " + root.getMessage());
+	    } else {
+	        LOGGER.log(Level.SEVERE, "[VaultClient] Unexpected error: " + e.getMessage(), e);
+	    }
+	}
+
+	/**
+	 * A username and password. The password is wrapped in a {@link hudson.util.Secret}
+	 * once, when it is read, so that credentials can hand out that same
+	 * instance on every lookup.
+	 */
 	public static class UsernamePassword {
 		private final String username;
 		private final hudson.util.Secret password;
@@ -112,5 +198,9 @@ public class VaultClient {
 		public String getPassword() {
 			return password.getPlainText();
 		}
+
+		public hudson.util.Secret getPasswordSecret() {
+			return password;
+		}
 	}
 }
@@ -0,0 +1,67 @@
+package com.delinea.secrets.jenkins.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A lock-free latency histogram with fixed, roughly logarithmic buckets from
+ * one millisecond to a minute. Percentiles are reported as the upper bound of
+ * the bucket they fall in, which is precise enough to alert on.
+ */
+final class LatencyHistogram {
+	private static final long[] BOUNDS_MILLIS = { 1, 2, 5, 10, 20, 50, 100, 200, 500, 1000, 2000, 5000, 10000, 30000,
+			60000 };
+
+	/** One adder per bound plus one for everything slower. */
+	private final LongAdder[] buckets = new LongAdder[BOUNDS_MILLIS.length + 1];
+	private final LongAdder count = new LongAdder();
+	private final LongAdder totalNanos = new LongAdder();
+	private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+
+	LatencyHistogram() {
+		for (int i = 0; i < buckets.length; i++) {
+			buckets[i] = new LongAdder();
+		}
+	}
+
+	void record(long nanos) {
+		long millis = TimeUnit.NANOSECONDS.toMillis(Math.max(0, nanos));
+		int bucket = 0;
+		while (bucket < BOUNDS_MILLIS.length && millis > BOUNDS_MILLIS[bucket]) {
+			bucket++;
+		}
+		buckets[bucket].increment();
+		count.increment();
+		totalNanos.add(nanos);
+		maxNanos.accumulate(nanos);
+	}
+
+	LatencySnapshot snapshot() {
+		long[] counts = new long[buckets.length];
+		long total = 0;
+		for (int i = 0; i < counts.length; i++) {
+			counts[i] = buckets[i].sum();
+			total += counts[i];
+		}
+		double max = maxNanos.get() / 1e6;
+		double mean = total == 0 ? 0 : totalNanos.sum() / 1e6 / count.sum();
+		return new LatencySnapshot(total, mean, max, percentile(counts, total, 0.50, max),
+				percentile(counts, total, 0.95, max), percentile(counts, total, 0.99, max));
+	}
+
+	private static double percentile(long[] counts, long total, double quantile, double max) {
+		if (total == 0) {
+			return 0;
+		}
+		long rank = (long) Math.ceil(quantile * total);
+		long seen = 0;
+		for (int i = 0; i < counts.length; i++) {
+			seen += counts[i];
+			if (seen >= rank) {
+				return i < BOUNDS_MILLIS.length ? Math.min(BOUNDS_MILLIS[i], max) : max;
+			}
+		}
+		return max;
+	}
+}
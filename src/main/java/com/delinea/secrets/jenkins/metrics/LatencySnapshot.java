@@ -0,0 +1,51 @@
+package com.delinea.secrets.jenkins.metrics;
+
+import javax.management.ConstructorParameters;
+
+/**
+ * The state of a {@link LatencyHistogram} at one point in time, in
+ * milliseconds.
+ */
+public final class LatencySnapshot {
+	private final long count;
+	private final double meanMillis;
+	private final double maxMillis;
+	private final double p50Millis;
+	private final double p95Millis;
+	private final double p99Millis;
+
+	@ConstructorParameters({ "count", "meanMillis", "maxMillis", "p50Millis", "p95Millis", "p99Millis" })
+	public LatencySnapshot(long count, double meanMillis, double maxMillis, double p50Millis, double p95Millis,
+			double p99Millis) {
+		this.count = count;
+		this.meanMillis = meanMillis;
+		this.maxMillis = maxMillis;
+		this.p50Millis = p50Millis;
+		this.p95Millis = p95Millis;
+		this.p99Millis = p99Millis;
+	}
+
+	public long getCount() {
+		return count;
+	}
+
+	public double getMeanMillis() {
+		return meanMillis;
+	}
+
+	public double getMaxMillis() {
+		return maxMillis;
+	}
+
+	public double getP50Millis() {
+		return p50Millis;
+	}
+
+	public double getP95Millis() {
+		return p95Millis;
+	}
+
+	public double getP99Millis() {
+		return p99Millis;
+	}
+}
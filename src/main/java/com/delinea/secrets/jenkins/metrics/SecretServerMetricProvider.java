@@ -0,0 +1,62 @@
+package com.delinea.secrets.jenkins.metrics;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.Nonnull;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Metric;
+import com.codahale.metrics.MetricSet;
+
+import hudson.Extension;
+import jenkins.metrics.api.MetricProvider;
+
+/**
+ * Publishes {@link SecretServerMetrics} to the Metrics plugin, when it is
+ * installed, under {@code delinea.secretserver.*}. Failures are broken down by
+ * the statuses worth alerting on; JMX has the full breakdown.
+ */
+@Extension(optional = true)
+public class SecretServerMetricProvider extends MetricProvider {
+	private static final String PREFIX = "delinea.secretserver.";
+	private static final List<String> FAILURE_KINDS = Arrays.asList("400", "401", "403", "404", "407", "429", "500",
+			"502", "503", "504", "io", "other");
+
+	@Nonnull
+	@Override
+	public MetricSet getMetricSet() {
+		SecretServerMetrics metrics = SecretServerMetrics.get();
+		Map<String, Metric> gauges = new HashMap<>();
+		for (SecretServerMetrics.Operation operation : SecretServerMetrics.Operation.values()) {
+			String name = PREFIX + operation.getMetricName();
+			gauges.put(name + ".latency.count", (Gauge<Long>) () -> metrics.latency(operation).getCount());
+			gauges.put(name + ".latency.mean", (Gauge<Double>) () -> metrics.latency(operation).getMeanMillis());
+			gauges.put(name + ".latency.p50", (Gauge<Double>) () -> metrics.latency(operation).getP50Millis());
+			gauges.put(name + ".latency.p95", (Gauge<Double>) () -> metrics.latency(operation).getP95Millis());
+			gauges.put(name + ".latency.p99", (Gauge<Double>) () -> metrics.latency(operation).getP99Millis());
+			gauges.put(name + ".latency.max", (Gauge<Double>) () -> metrics.latency(operation).getMaxMillis());
+			counter(gauges, metrics, operation.getMetricName() + ".success");
+			counter(gauges, metrics, operation.getMetricName() + ".failure");
+			for (String kind : FAILURE_KINDS) {
+				counter(gauges, metrics, operation.getMetricName() + ".failure." + kind);
+			}
+		}
+		for (SecretServerMetrics.Cache cache : SecretServerMetrics.Cache.values()) {
+			counter(gauges, metrics, cache.getMetricName() + ".hit");
+			counter(gauges, metrics, cache.getMetricName() + ".stale");
+			counter(gauges, metrics, cache.getMetricName() + ".miss");
+			gauges.put(PREFIX + cache.getMetricName() + ".hitRatio", (Gauge<Double>) () -> metrics.hitRatio(cache));
+		}
+		for (SecretServerMetrics.ProxyPath path : SecretServerMetrics.ProxyPath.values()) {
+			counter(gauges, metrics, "proxy." + path.getMetricName());
+		}
+		return () -> gauges;
+	}
+
+	private static void counter(Map<String, Metric> gauges, SecretServerMetrics metrics, String name) {
+		gauges.put(PREFIX + name, (Gauge<Long>) () -> metrics.count(name));
+	}
+}
@@ -0,0 +1,213 @@
+package com.delinea.secrets.jenkins.metrics;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.springframework.web.client.RestClientResponseException;
+
+import hudson.init.InitMilestone;
+import hudson.init.Initializer;
+
+/**
+ * Latency, outcome, proxy and cache metrics of the Secret Server integration.
+ * Recording is lock-free and cheap enough for every request. The metrics are
+ * published through JMX and, when the Metrics plugin is installed, through
+ * {@link SecretServerMetricProvider}.
+ */
+public final class SecretServerMetrics implements SecretServerMetricsMXBean {
+	private static final Logger LOGGER = Logger.getLogger(SecretServerMetrics.class.getName());
+
+	public static final String OBJECT_NAME = "com.delinea.secrets.jenkins:type=SecretServerMetrics";
+
+	private static final SecretServerMetrics INSTANCE = new SecretServerMetrics();
+
+	public enum Operation {
+		/** Requesting an access token. */
+		AUTHENTICATE("auth"),
+		/** Fetching one secret from Secret Server. */
+		GET_SECRET("getSecret"),
+		/** Everything {@code withSecretServer} does before its body runs. */
+		SET_UP("setUp");
+
+		private final String metricName;
+
+		Operation(String metricName) {
+			this.metricName = metricName;
+		}
+
+		public String getMetricName() {
+			return metricName;
+		}
+	}
+
+	public enum Cache {
+		SECRET_VALUE("secretValueCache"), ACCESS_TOKEN("accessTokenCache"), RUN_SECRET("runSecretCache");
+
+		private final String metricName;
+
+		Cache(String metricName) {
+			this.metricName = metricName;
+		}
+
+		public String getMetricName() {
+			return metricName;
+		}
+	}
+
+	public enum ProxyPath {
+		PLUGIN_PROXY("plugin"), JENKINS_PROXY("jenkins"), NO_PROXY_MATCH("noProxyMatch"), DIRECT("direct");
+
+		private final String metricName;
+
+		ProxyPath(String metricName) {
+			this.metricName = metricName;
+		}
+
+		public String getMetricName() {
+			return metricName;
+		}
+	}
+
+	private final Map<Operation, LatencyHistogram> latencies = new EnumMap<>(Operation.class);
+	private final ConcurrentMap<String, LongAdder> counters = new ConcurrentHashMap<>();
+
+	private SecretServerMetrics() {
+		for (Operation operation : Operation.values()) {
+			latencies.put(operation, new LatencyHistogram());
+		}
+	}
+
+	public static SecretServerMetrics get() {
+		return INSTANCE;
+	}
+
+	/**
+	 * @param startNanos - {@link System#nanoTime()} when the operation started.
+	 */
+	public void succeeded(Operation operation, long startNanos) {
+		latencies.get(operation).record(System.nanoTime() - startNanos);
+		increment(operation.metricName + ".success");
+	}
+
+	/**
+	 * @param startNanos - {@link System#nanoTime()} when the operation started.
+	 * @param failure    - Why it failed, which determines the failure counter
+	 *                   incremented.
+	 */
+	public void failed(Operation operation, long startNanos, Throwable failure) {
+		latencies.get(operation).record(System.nanoTime() - startNanos);
+		increment(operation.metricName + ".failure");
+		increment(operation.metricName + ".failure." + failureKind(failure));
+	}
+
+	public void cacheHit(Cache cache) {
+		increment(cache.metricName + ".hit");
+	}
+
+	public void cacheMiss(Cache cache) {
+		increment(cache.metricName + ".miss");
+	}
+
+	/** Counts a stale value served while it is refreshed, which is also a hit. */
+	public void staleHit(Cache cache) {
+		increment(cache.metricName + ".stale");
+	}
+
+	public void proxyPath(ProxyPath path) {
+		increment("proxy." + path.metricName);
+	}
+
+	/**
+	 * @return the HTTP status of the failure, {@code io} for a network error or
+	 *         {@code other}
+	 */
+	static String failureKind(Throwable failure) {
+		for (Throwable t = failure; t != null; t = t.getCause()) {
+			if (t instanceof RestClientResponseException) {
+				return String.valueOf(((RestClientResponseException) t).getStatusCode().value());
+			}
+			if (t instanceof IOException) {
+				return "io";
+			}
+		}
+		return "other";
+	}
+
+	private void increment(String name) {
+		counters.computeIfAbsent(name, n -> new LongAdder()).increment();
+	}
+
+	long count(String name) {
+		LongAdder counter = counters.get(name);
+		return counter == null ? 0 : counter.sum();
+	}
+
+	LatencySnapshot latency(Operation operation) {
+		return latencies.get(operation).snapshot();
+	}
+
+	double hitRatio(Cache cache) {
+		long hits = count(cache.metricName + ".hit") + count(cache.metricName + ".stale");
+		long lookups = hits + count(cache.metricName + ".miss");
+		return lookups == 0 ? 0 : (double) hits / lookups;
+	}
+
+	@Override
+	public Map<String, LatencySnapshot> getLatencies() {
+		Map<String, LatencySnapshot> snapshots = new LinkedHashMap<>();
+		for (Operation operation : Operation.values()) {
+			snapshots.put(operation.metricName, latency(operation));
+		}
+		return snapshots;
+	}
+
+	@Override
+	public Map<String, Long> getCounters() {
+		Map<String, Long> values = new TreeMap<>();
+		counters.forEach((name, counter) -> values.put(name, counter.sum()));
+		return values;
+	}
+
+	@Override
+	public double getSecretValueCacheHitRatio() {
+		return hitRatio(Cache.SECRET_VALUE);
+	}
+
+	@Override
+	public double getAccessTokenCacheHitRatio() {
+		return hitRatio(Cache.ACCESS_TOKEN);
+	}
+
+	@Override
+	public double getRunSecretCacheHitRatio() {
+		return hitRatio(Cache.RUN_SECRET);
+	}
+
+	@Initializer(after = InitMilestone.PLUGINS_STARTED)
+	public static void registerMBean() {
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			ObjectName name = new ObjectName(OBJECT_NAME);
+			if (server.isRegistered(name)) {
+				// left behind by an earlier instance of the plugin's class loader
+				server.unregisterMBean(name);
+			}
+			server.registerMBean(INSTANCE, name);
+		} catch (JMException e) {
+			LOGGER.log(Level.WARNING, "[SecretServerMetrics] Unable to register " + OBJECT_NAME, e);
+		}
+	}
+}
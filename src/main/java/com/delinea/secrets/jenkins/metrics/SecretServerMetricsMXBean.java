@@ -0,0 +1,31 @@
+package com.delinea.secrets.jenkins.metrics;
+
+import java.util.Map;
+
+/**
+ * JMX view of {@link SecretServerMetrics}, registered as
+ * {@value SecretServerMetrics#OBJECT_NAME}.
+ */
+public interface SecretServerMetricsMXBean {
+	/**
+	 * @return latency of authentication, secret fetches and build set up, keyed
+	 *         by operation
+	 */
+	Map<String, LatencySnapshot> getLatencies();
+
+	/**
+	 * @return every counter by name, for example {@code getSecret.success},
+	 *         {@code getSecret.failure.503}, {@code proxy.plugin} or
+	 *         {@code secretValueCache.hit}
+	 */
+	Map<String, Long> getCounters();
+
+	/** @return the share of secret value lookups served from the cache, stale or not */
+	double getSecretValueCacheHitRatio();
+
+	/** @return the share of token lookups served from the cache */
+	double getAccessTokenCacheHitRatio();
+
+	/** @return the share of secrets in builds that were already fetched earlier in the same build */
+	double getRunSecretCacheHitRatio();
+}
@@ -1,11 +1,25 @@
 package com.delinea.secrets.jenkins.util;
 
+import com.delinea.secrets.jenkins.metrics.SecretServerMetrics;
+import com.delinea.secrets.jenkins.metrics.SecretServerMetrics.ProxyPath;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import hudson.Extension;
 import hudson.ProxyConfiguration;
+import hudson.XmlFile;
+import hudson.model.Saveable;
+import hudson.model.listeners.SaveableListener;
 import jenkins.model.Jenkins;
 import org.apache.commons.lang3.StringUtils;
 
+import java.lang.reflect.Field;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.logging.Logger;
@@ -13,32 +27,68 @@ import java.util.logging.Logger;
 /**
  * Utility to resolve Delinea + Jenkins proxy configuration safely and in
  * compliance with access-modifier rules.
+ * <p>
+ * Decisions are remembered per target host and plugin proxy settings, so only
+ * the first fetch from a host pays for the NO_PROXY matching and logging.
+ * They are forgotten whenever the plugin or Jenkins proxy configuration is
+ * saved; see {@link #invalidateCache()}.
  */
 public class DelineaProxyUtil {
 
 	private static final Logger LOGGER = Logger.getLogger(DelineaProxyUtil.class.getName());
 
+	/** How many decisions are remembered; those least likely to be used again are dropped first. */
+	private static final int MAX_CACHED = 1024;
+
+	private static final Cache<Key, Resolved> RESOLVED = Caffeine.newBuilder().maximumSize(MAX_CACHED).build();
+
+	private static final Field NO_PROXY_HOST_FIELD = noProxyHostField();
+
 	public static final String PROXY_HOST_PROPERTY = "proxy.host";
 	public static final String PROXY_PORT_PROPERTY = "proxy.port";
 	public static final String PROXY_USERNAME_PROPERTY = "proxy.username";
 	public static final String PROXY_PASSWORD_PROPERTY = "proxy.password";
 
+	/**
+	 * @return the proxy properties to connect to {@code vaultUrl} with; empty for a
+	 *         direct connection. The map must not be modified.
+	 */
 	public static Map<String, String> resolveProxy(String vaultUrl, String proxyHost, String proxyPort,
 			String proxyUsername, String proxyPassword, String noProxyHosts) {
+		String targetHost = extractHost(vaultUrl);
+		Key key = new Key(targetHost, proxyHost, proxyPort, proxyUsername, digest(proxyPassword), noProxyHosts);
+		Resolved resolved = RESOLVED.getIfPresent(key);
+		if (resolved == null) {
+			resolved = resolve(targetHost, proxyHost, proxyPort, proxyUsername, proxyPassword, noProxyHosts);
+			RESOLVED.put(key, resolved);
+		}
+		SecretServerMetrics.get().proxyPath(resolved.path);
+		return resolved.proxyConfig;
+	}
+
+	/**
+	 * Forgets every remembered decision, to be called when either proxy
+	 * configuration changes.
+	 */
+	public static void invalidateCache() {
+		RESOLVED.invalidateAll();
+	}
+
+	private static Resolved resolve(String targetHost, String proxyHost, String proxyPort,
+			String proxyUsername, String proxyPassword, String noProxyHosts) {
 
 		String activeProxyHost = proxyHost;
 		String activeProxyPort = proxyPort;
 		String activeProxyUser = proxyUsername;
 		String activeProxyPass = proxyPassword;
 		String proxySource;
-
-		String targetHost = extractHost(vaultUrl);
+		ProxyPath path;
 
 		// Always check if noProxyHosts matches first
-		if (StringUtils.isNotBlank(noProxyHosts) && isHostInNoProxy(targetHost, noProxyHosts)) {
+		if (StringUtils.isNotBlank(noProxyHosts) && NoProxyMatcher.compile(noProxyHosts).matches(targetHost)) {
 			LOGGER.info("[DelineaProxyUtil] Skipping proxy due to NO_PROXY match for: " + targetHost);
 			proxySource = "Direct Connection (NO_PROXY match)";
-			return logAndReturn(proxySource, null, null, null, null);
+			return new Resolved(ProxyPath.NO_PROXY_MATCH, logAndReturn(proxySource, null, null, null, null));
 		}
 
 		// If plugin proxy not provided, try Jenkins proxy
@@ -50,10 +100,10 @@ public class DelineaProxyUtil {
 
 				// Jenkins NO_PROXY check (environment-based)
 				String jenkinsNoProxy = getNoProxyList(jenkinsProxy);
-				if (isHostInNoProxy(targetHost, jenkinsNoProxy)) {
+				if (NoProxyMatcher.compile(jenkinsNoProxy).matches(targetHost)) {
 					LOGGER.info("[DelineaProxyUtil] Skipping Jenkins proxy due to NO_PROXY match for: " + targetHost);
 					proxySource = "Direct Connection (NO_PROXY match)";
-					return logAndReturn(proxySource, null, null, null, null);
+					return new Resolved(ProxyPath.NO_PROXY_MATCH, logAndReturn(proxySource, null, null, null, null));
 				}
 
 				activeProxyHost = jenkinsProxy.name;
@@ -61,16 +111,20 @@ public class DelineaProxyUtil {
 				activeProxyUser = jenkinsProxy.getUserName();
 				activeProxyPass = jenkinsProxy.getPassword();
 				proxySource = "Jenkins Global Proxy";
+				path = ProxyPath.JENKINS_PROXY;
 
 			} else {
 				proxySource = "Direct Connection (no proxy configured)";
+				path = ProxyPath.DIRECT;
 			}
 
 		} else {
 			proxySource = "Delinea Plugin Proxy";
+			path = ProxyPath.PLUGIN_PROXY;
 		}
 
-		return logAndReturn(proxySource, activeProxyHost, activeProxyPort, activeProxyUser, activeProxyPass);
+		return new Resolved(path,
+				logAndReturn(proxySource, activeProxyHost, activeProxyPort, activeProxyUser, activeProxyPass));
 	}
 
 	private static String extractHost(String url) {
@@ -90,16 +144,15 @@ public class DelineaProxyUtil {
 	private static String getNoProxyList(ProxyConfiguration proxy) {
 	    if (proxy == null) return "";
 
-	    try {
-	        // Safely access the noProxyHost field reflectively
-	        java.lang.reflect.Field field = ProxyConfiguration.class.getDeclaredField("noProxyHost");
-	        field.setAccessible(true);
-	        Object value = field.get(proxy);
-	        if (value instanceof String && StringUtils.isNotBlank((String) value)) {
-	            return (String) value;
+	    if (NO_PROXY_HOST_FIELD != null) {
+	        try {
+	            Object value = NO_PROXY_HOST_FIELD.get(proxy);
+	            if (value instanceof String && StringUtils.isNotBlank((String) value)) {
+	                return (String) value;
+	            }
+	        } catch (IllegalAccessException e) {
+	            LOGGER.warning("[DelineaProxyUtil] Unable to access noProxyHost field: " + e.getMessage());
 	        }
-	    } catch (NoSuchFieldException | IllegalAccessException e) {
-	        LOGGER.warning("[DelineaProxyUtil] Unable to access noProxyHost field: " + e.getMessage());
 	    }
 
 	    // fallback to environment
@@ -111,17 +164,16 @@ public class DelineaProxyUtil {
 	    return System.getProperty("no_proxy", "");
 	}
 
-	private static boolean isHostInNoProxy(String host, String noProxyList) {
-		if (StringUtils.isBlank(host) || StringUtils.isBlank(noProxyList))
-			return false;
-
-		for (String entry : noProxyList.split(",")) {
-			entry = entry.trim();
-			if (StringUtils.isNotBlank(entry) && (host.equalsIgnoreCase(entry) || host.endsWith(entry))) {
-				return true;
-			}
-		}
-		return false;
+	private static Field noProxyHostField() {
+	    try {
+	        // Safely access the noProxyHost field reflectively
+	        Field field = ProxyConfiguration.class.getDeclaredField("noProxyHost");
+	        field.setAccessible(true);
+	        return field;
+	    } catch (NoSuchFieldException | RuntimeException e) {
+	        LOGGER.warning("[DelineaProxyUtil] Unable to access noProxyHost field: " + e.getMessage());
+	        return null;
+	    }
 	}
 
 	private static Map<String, String> logAndReturn(String source, String host, String port, String user, String pass) {
@@ -152,4 +204,66 @@ public class DelineaProxyUtil {
 			proxyConfig.put(PROXY_PASSWORD_PROPERTY, pass);
 		return proxyConfig;
 	}
+
+	private static final class Resolved {
+		private final ProxyPath path;
+		private final Map<String, String> proxyConfig;
+
+		Resolved(ProxyPath path, Map<String, String> proxyConfig) {
+			this.path = path;
+			this.proxyConfig = Collections.unmodifiableMap(proxyConfig);
+		}
+	}
+
+	/**
+	 * The password only takes part in a {@link Key} as a digest, so that it is
+	 * not held in the clear for as long as the key is remembered.
+	 */
+	private static String digest(String value) {
+		if (value == null) {
+			return null;
+		}
+		try {
+			byte[] hash = MessageDigest.getInstance("SHA-256").digest(value.getBytes(StandardCharsets.UTF_8));
+			StringBuilder sb = new StringBuilder(hash.length * 2);
+			for (byte b : hash) {
+				sb.append(String.format("%02x", b));
+			}
+			return sb.toString();
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException("SHA-256 is not available", e);
+		}
+	}
+
+	/** The inputs a decision depends on, besides the Jenkins proxy configuration. */
+	private static final class Key {
+		private final String[] parts;
+		private final int hash;
+
+		Key(String... parts) {
+			this.parts = parts;
+			this.parts[0] = StringUtils.lowerCase(parts[0]);
+			this.hash = Arrays.hashCode(parts);
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			return o instanceof Key && Arrays.equals(parts, ((Key) o).parts);
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+	}
+
+	@Extension
+	public static final class ProxySaveListener extends SaveableListener {
+		@Override
+		public void onChange(Saveable o, XmlFile file) {
+			if (o instanceof ProxyConfiguration) {
+				invalidateCache();
+			}
+		}
+	}
 }
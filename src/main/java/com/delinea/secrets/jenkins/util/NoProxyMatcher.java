@@ -0,0 +1,184 @@
+package com.delinea.secrets.jenkins.util;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * A NO_PROXY list compiled for repeated matching. Entries may be separated by
+ * commas or whitespace (Jenkins' own list is one entry per line) and take the
+ * forms:
+ * <ul>
+ * <li>{@code example.com}, {@code .example.com} or {@code *.example.com}: the
+ * domain and every host below it, matched label by label against a trie of
+ * reversed domain labels;</li>
+ * <li>{@code *}: every host;</li>
+ * <li>{@code 10.0.0.0/8} or {@code fd00::/8}: IP literals in the CIDR
+ * range;</li>
+ * <li>any other entry containing {@code *}: a wildcard pattern matched against
+ * the whole host name.</li>
+ * </ul>
+ * Host names are never resolved, so CIDR entries only match hosts given as IP
+ * addresses. Instances are immutable.
+ */
+public final class NoProxyMatcher {
+	private static final Pattern IPV4 = Pattern.compile("\\d{1,3}(\\.\\d{1,3}){3}");
+
+	private final boolean matchAll;
+	private final Label domains = new Label();
+	private final List<Cidr> ranges = new ArrayList<>();
+	private final List<Pattern> wildcards = new ArrayList<>();
+
+	private NoProxyMatcher(String noProxyList) {
+		boolean all = false;
+		for (String entry : StringUtils.split(StringUtils.defaultString(noProxyList), ", \t\r\n")) {
+			String e = entry.toLowerCase(Locale.ROOT);
+			if (e.equals("*")) {
+				all = true;
+			} else if (e.contains("/")) {
+				Cidr cidr = Cidr.parse(e);
+				if (cidr != null) {
+					ranges.add(cidr);
+				}
+			} else if (e.startsWith("*.") && e.indexOf('*', 1) < 0) {
+				domains.add(e.substring(2));
+			} else if (e.contains("*")) {
+				wildcards.add(Pattern.compile(
+						Pattern.quote(e).replace("*", "\\E.*\\Q")));
+			} else {
+				domains.add(StringUtils.removeStart(e, "."));
+			}
+		}
+		this.matchAll = all;
+	}
+
+	public static NoProxyMatcher compile(String noProxyList) {
+		return new NoProxyMatcher(noProxyList);
+	}
+
+	public boolean matches(String host) {
+		if (StringUtils.isBlank(host)) {
+			return false;
+		}
+		if (matchAll) {
+			return true;
+		}
+		String h = StringUtils.removeEnd(StringUtils.strip(host.toLowerCase(Locale.ROOT), "[]"), ".");
+		if (domains.matches(h)) {
+			return true;
+		}
+		if (!ranges.isEmpty()) {
+			byte[] address = literalAddress(h);
+			if (address != null) {
+				for (Cidr range : ranges) {
+					if (range.contains(address)) {
+						return true;
+					}
+				}
+			}
+		}
+		for (Pattern wildcard : wildcards) {
+			if (wildcard.matcher(h).matches()) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/** @return the address of an IP literal, or {@code null} for a host name */
+	private static byte[] literalAddress(String host) {
+		if (!IPV4.matcher(host).matches() && host.indexOf(':') < 0) {
+			return null;
+		}
+		try {
+			// a literal is parsed without any lookup
+			return InetAddress.getByName(host).getAddress();
+		} catch (UnknownHostException e) {
+			return null;
+		}
+	}
+
+	/** A node in the trie of domain labels, read from the top-level domain down. */
+	private static final class Label {
+		private final Map<String, Label> children = new HashMap<>();
+		/** Whether a NO_PROXY entry ends here. */
+		private boolean domain;
+
+		void add(String name) {
+			if (name.isEmpty()) {
+				return;
+			}
+			String[] labels = StringUtils.split(name, '.');
+			Label node = this;
+			for (int i = labels.length - 1; i >= 0; i--) {
+				node = node.children.computeIfAbsent(labels[i], l -> new Label());
+			}
+			node.domain = true;
+		}
+
+		boolean matches(String host) {
+			Label node = this;
+			int end = host.length();
+			while (end > 0 && !node.children.isEmpty()) {
+				int start = host.lastIndexOf('.', end - 1) + 1;
+				node = node.children.get(host.substring(start, end));
+				if (node == null) {
+					return false;
+				}
+				if (node.domain) {
+					return true;
+				}
+				end = start - 1;
+			}
+			return false;
+		}
+	}
+
+	private static final class Cidr {
+		private final byte[] network;
+		private final int prefixLength;
+
+		private Cidr(byte[] network, int prefixLength) {
+			this.network = network;
+			this.prefixLength = prefixLength;
+		}
+
+		static Cidr parse(String entry) {
+			String address = StringUtils.substringBefore(entry, "/");
+			byte[] network = literalAddress(StringUtils.strip(address, "[]"));
+			if (network == null) {
+				return null;
+			}
+			try {
+				int prefixLength = Integer.parseInt(StringUtils.substringAfter(entry, "/"));
+				if (prefixLength < 0 || prefixLength > network.length * 8) {
+					return null;
+				}
+				return new Cidr(network, prefixLength);
+			} catch (NumberFormatException e) {
+				return null;
+			}
+		}
+
+		boolean contains(byte[] address) {
+			if (address.length != network.length) {
+				return false;
+			}
+			int bits = prefixLength;
+			for (int i = 0; bits > 0; i++, bits -= 8) {
+				int mask = bits >= 8 ? 0xff : (0xff << (8 - bits)) & 0xff;
+				if ((address[i] & mask) != (network[i] & mask)) {
+					return false;
+				}
+			}
+			return true;
+		}
+	}
+}
@@ -0,0 +1,170 @@
+package com.delinea.secrets.jenkins.wrapper.cred;
+
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import hudson.Extension;
+import hudson.model.Run;
+import hudson.model.listeners.RunListener;
+import hudson.util.Secret;
+import jenkins.util.SystemProperties;
+
+/**
+ * The secret values to be masked in a build's console output, together with
+ * the {@link SecretMatcher} compiled from them. The matcher is compiled at most
+ * once per version of the set and shared by every logger that masks it; a
+ * version only changes when a value that was not already present is added.
+ * <p>
+ * Each {@link Run} has its own set, obtained with {@link #forRun(Run)}, which
+ * is shared by every {@code withSecretServer} block of the run and released
+ * when the run is finalized.
+ * <p>
+ * A set saved with a pipeline program is written as its run's id and its
+ * values encrypted with {@link Secret}, never in the clear. When the program
+ * is read back, for instance after a restart, it resolves to the run's set in
+ * this registry, so that loggers restored with it keep masking what later
+ * blocks add.
+ */
+public final class MaskedValues implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    /** How many characters of secret values a single run may hold. */
+    static final int MAX_CHARS = SystemProperties.getInteger(MaskedValues.class.getName() + ".maxChars", 1 << 20);
+
+    private static final ConcurrentMap<String, MaskedValues> RUNS = new ConcurrentHashMap<>();
+
+    private final String runId;
+    /** Only set while this set is written or read back. */
+    private List<String> encryptedValues;
+    private transient Set<String> values = new LinkedHashSet<>();
+    private transient int chars;
+    private transient volatile int version;
+    private transient volatile Compiled compiled;
+
+    private MaskedValues(final String runId) {
+        this.runId = runId;
+    }
+
+    /**
+     * @return the values masked in this run's console output
+     */
+    public static MaskedValues forRun(final Run<?, ?> run) {
+        return RUNS.computeIfAbsent(run.getExternalizableId(), MaskedValues::new);
+    }
+
+    /**
+     * @param value - A value to mask; {@code null} and empty values are ignored.
+     * @return {@code false} if the value could not be added because this set has
+     *         reached its size limit, in which case the value cannot be masked
+     */
+    public synchronized boolean add(final String value) {
+        if (value == null || value.isEmpty() || values.contains(value)) {
+            return true;
+        }
+        if (chars + value.length() > MAX_CHARS) {
+            return false;
+        }
+        values.add(value);
+        chars += value.length();
+        version++;
+        return true;
+    }
+
+    private synchronized void clear() {
+        values.clear();
+        chars = 0;
+        compiled = null;
+        version++;
+    }
+
+    public synchronized int size() {
+        return values.size();
+    }
+
+    /**
+     * Serializes under the same lock as {@link #add}, as parallel branches may be
+     * adding values while the program is saved.
+     */
+    private synchronized void writeObject(final ObjectOutputStream out) throws IOException {
+        encryptedValues = new ArrayList<>(values.size());
+        for (final String value : values) {
+            encryptedValues.add(Secret.fromString(value).getEncryptedValue());
+        }
+        try {
+            out.defaultWriteObject();
+        } finally {
+            encryptedValues = null;
+        }
+    }
+
+    private Object readResolve() {
+        final List<String> restored = encryptedValues;
+        encryptedValues = null;
+        if (runId == null) {
+            // saved by an earlier version, which did not record the run
+            values = new LinkedHashSet<>();
+            return this;
+        }
+        final MaskedValues current = RUNS.computeIfAbsent(runId, MaskedValues::new);
+        if (restored != null) {
+            for (final String encrypted : restored) {
+                final Secret value = Secret.decrypt(encrypted);
+                if (value != null) {
+                    current.add(value.getPlainText());
+                }
+            }
+        }
+        return current;
+    }
+
+    /**
+     * @param charsetName - The charset of the output being masked.
+     * @return the matcher for the current values, or {@code null} if there are
+     *         none
+     */
+    public SecretMatcher matcher(final String charsetName) {
+        Compiled current = compiled;
+        if (current != null && current.version == version && current.charsetName.equals(charsetName)) {
+            return current.matcher;
+        }
+        synchronized (this) {
+            current = compiled;
+            if (current == null || current.version != version || !current.charsetName.equals(charsetName)) {
+                current = new Compiled(version, charsetName,
+                        SecretMatcher.compile(new ArrayList<>(values), charsetName));
+                compiled = current;
+            }
+            return current.matcher;
+        }
+    }
+
+    @Extension
+    public static final class RunCleanup extends RunListener<Run<?, ?>> {
+        @Override
+        public void onFinalized(final Run<?, ?> run) {
+            final MaskedValues values = RUNS.remove(run.getExternalizableId());
+            if (values != null) {
+                values.clear();
+            }
+        }
+    }
+
+    private static final class Compiled {
+        private final int version;
+        private final String charsetName;
+        private final SecretMatcher matcher;
+
+        Compiled(final int version, final String charsetName, final SecretMatcher matcher) {
+            this.version = version;
+            this.charsetName = charsetName;
+            this.matcher = matcher;
+        }
+    }
+}
@@ -0,0 +1,157 @@
+package com.delinea.secrets.jenkins.wrapper.cred;
+
+import java.util.Arrays;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+
+import com.delinea.secrets.jenkins.client.SecretSnapshot;
+import com.delinea.secrets.jenkins.metrics.SecretServerMetrics;
+
+import hudson.Extension;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+import hudson.model.listeners.RunListener;
+
+/**
+ * The secrets fetched during a {@link Run}, so that every
+ * {@code withSecretServer} block of the run, including blocks in parallel
+ * branches, fetches each secret at most once. Blocks that need a secret while
+ * another is fetching it wait for that fetch rather than starting their own.
+ * <p>
+ * Like {@link MaskedValues}, each run's cache is held in memory only, obtained
+ * with {@link #forRun(Run)}, and dropped when the run completes; it is never
+ * part of the run's persisted state. Entries are keyed by Secret Server URL,
+ * credential ID and secret ID, and are only looked up after the block has
+ * resolved its credential with the run's permissions.
+ * <p>
+ * The cache holds a reference to every {@link SecretSnapshot} it keeps and
+ * releases them all when the run completes; each snapshot returned by
+ * {@link #get} is a reference of the caller's own, to be released once it has
+ * been used.
+ */
+public final class RunSecretCache {
+    private static final ConcurrentMap<String, RunSecretCache> RUNS = new ConcurrentHashMap<>();
+
+    private final ConcurrentMap<Key, CompletableFuture<SecretSnapshot>> secrets = new ConcurrentHashMap<>();
+
+    private RunSecretCache() {
+    }
+
+    /**
+     * @return the secrets fetched so far during this run
+     */
+    public static RunSecretCache forRun(final Run<?, ?> run) {
+        return RUNS.computeIfAbsent(run.getExternalizableId(), id -> new RunSecretCache());
+    }
+
+    /**
+     * A fetch of a secret that is not yet in the cache.
+     */
+    public interface Loader {
+        SecretSnapshot load() throws Exception;
+    }
+
+    /**
+     * Returns the secret fetched earlier in this run, or fetches it with
+     * {@code loader}. A failed fetch is not remembered, so a later block tries
+     * again. The caller must {@link SecretSnapshot#release() release} the
+     * returned snapshot.
+     */
+    public SecretSnapshot get(final String baseUrl, final String credentialId, final String secretId,
+                              final Loader loader) throws Exception {
+        final Key key = new Key(baseUrl, credentialId, secretId);
+        final CompletableFuture<SecretSnapshot> created = new CompletableFuture<>();
+        final CompletableFuture<SecretSnapshot> existing = secrets.putIfAbsent(key, created);
+        if (existing != null) {
+            SecretServerMetrics.get().cacheHit(SecretServerMetrics.Cache.RUN_SECRET);
+            final SecretSnapshot secret = await(existing);
+            if (!secret.tryRetain()) {
+                throw new InterruptedException("The run has completed");
+            }
+            return secret;
+        }
+        SecretServerMetrics.get().cacheMiss(SecretServerMetrics.Cache.RUN_SECRET);
+        try {
+            final SecretSnapshot secret = loader.load();
+            // one reference for this cache, one for the caller
+            secret.tryRetain();
+            if (!created.complete(secret)) {
+                // cleared while loading
+                secret.release();
+            }
+            return secret;
+        } catch (Exception | Error e) {
+            secrets.remove(key, created);
+            created.completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    private static SecretSnapshot await(final CompletableFuture<SecretSnapshot> fetch) throws Exception {
+        try {
+            return fetch.get();
+        } catch (ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof Exception) {
+                throw (Exception) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw e;
+        } catch (CancellationException e) {
+            throw new InterruptedException("Fetch of the secret was cancelled");
+        }
+    }
+
+    private void clear() {
+        secrets.values().forEach(fetch -> {
+            if (!fetch.cancel(false) && !fetch.isCompletedExceptionally()) {
+                fetch.join().release();
+            }
+        });
+        secrets.clear();
+    }
+
+    @Extension
+    public static final class RunCleanup extends RunListener<Run<?, ?>> {
+        @Override
+        public void onCompleted(final Run<?, ?> run, final TaskListener listener) {
+            release(run);
+        }
+
+        @Override
+        public void onFinalized(final Run<?, ?> run) {
+            // in case the run never reported completion
+            release(run);
+        }
+
+        private static void release(final Run<?, ?> run) {
+            final RunSecretCache cache = RUNS.remove(run.getExternalizableId());
+            if (cache != null) {
+                cache.clear();
+            }
+        }
+    }
+
+    private static final class Key {
+        private final String[] parts;
+
+        Key(final String... parts) {
+            this.parts = parts;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            return o instanceof Key && Arrays.equals(parts, ((Key) o).parts);
+        }
+
+        @Override
+        public int hashCode() {
+            return Arrays.hashCode(parts);
+        }
+    }
+}
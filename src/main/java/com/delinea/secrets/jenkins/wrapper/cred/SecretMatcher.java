@@ -0,0 +1,184 @@
+package com.delinea.secrets.jenkins.wrapper.cred;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Queue;
+
+/**
+ * Finds every occurrence of a fixed set of secret values in a run of bytes in
+ * a single pass, using an Aho-Corasick automaton over the values encoded in
+ * the build's charset. Where occurrences overlap the leftmost one wins, and of
+ * those starting at the same place the longest, so that a value is never
+ * partially revealed because a shorter value is a prefix of it.
+ * <p>
+ * Instances are immutable and may be shared between threads.
+ */
+public final class SecretMatcher {
+	/** What each occurrence is replaced with; the same as credentials-binding's masking. */
+	static final String MASK = "****";
+
+	private static final int ROOT = 0;
+
+	// Trie, one entry per node. Children are kept as parallel sorted arrays.
+	private final byte[][] childKeys;
+	private final int[][] childNodes;
+	private final int[] failure;
+	/** Length of the value ending at this node, or 0 if none does. */
+	private final int[] length;
+	/** Nearest node on the failure chain at which a value ends, or -1. */
+	private final int[] output;
+	/** Transitions out of the root for every byte, to keep the common case cheap. */
+	private final int[] rootNext = new int[256];
+	private final byte[] mask;
+
+	private SecretMatcher(List<byte[]> values, byte[] mask) {
+		List<byte[]> keys = new ArrayList<>();
+		List<int[]> nodes = new ArrayList<>();
+		List<Integer> lengths = new ArrayList<>();
+		keys.add(new byte[0]);
+		nodes.add(new int[0]);
+		lengths.add(0);
+		for (byte[] value : values) {
+			int node = ROOT;
+			for (byte b : value) {
+				int next = find(keys.get(node), nodes.get(node), b);
+				if (next < 0) {
+					next = keys.size();
+					keys.add(new byte[0]);
+					nodes.add(new int[0]);
+					lengths.add(0);
+					insert(keys, nodes, node, b, next);
+				}
+				node = next;
+			}
+			lengths.set(node, value.length);
+		}
+
+		int size = keys.size();
+		this.childKeys = keys.toArray(new byte[size][]);
+		this.childNodes = nodes.toArray(new int[size][]);
+		this.length = new int[size];
+		for (int i = 0; i < size; i++) {
+			length[i] = lengths.get(i);
+		}
+		this.failure = new int[size];
+		this.output = new int[size];
+		this.mask = mask;
+		link();
+	}
+
+	/**
+	 * @param values      - The values to find; {@code null} and empty values are
+	 *                    ignored.
+	 * @param charsetName - The charset the searched bytes are encoded in.
+	 * @return a matcher, or {@code null} if there is nothing to find
+	 */
+	public static SecretMatcher compile(Collection<String> values, String charsetName) {
+		Charset charset = Charset.forName(charsetName);
+		List<byte[]> encoded = new ArrayList<>(values.size());
+		for (String value : values) {
+			if (value != null && !value.isEmpty()) {
+				encoded.add(value.getBytes(charset));
+			}
+		}
+		return encoded.isEmpty() ? null : new SecretMatcher(encoded, MASK.getBytes(charset));
+	}
+
+	private static int find(byte[] keys, int[] nodes, byte b) {
+		int i = Arrays.binarySearch(keys, b);
+		return i >= 0 ? nodes[i] : -1;
+	}
+
+	private static void insert(List<byte[]> keys, List<int[]> nodes, int node, byte b, int child) {
+		byte[] k = keys.get(node);
+		int[] n = nodes.get(node);
+		int at = -Arrays.binarySearch(k, b) - 1;
+		byte[] k2 = new byte[k.length + 1];
+		int[] n2 = new int[n.length + 1];
+		System.arraycopy(k, 0, k2, 0, at);
+		System.arraycopy(n, 0, n2, 0, at);
+		k2[at] = b;
+		n2[at] = child;
+		System.arraycopy(k, at, k2, at + 1, k.length - at);
+		System.arraycopy(n, at, n2, at + 1, n.length - at);
+		keys.set(node, k2);
+		nodes.set(node, n2);
+	}
+
+	/** Computes failure and output links breadth first. */
+	private void link() {
+		Arrays.fill(rootNext, ROOT);
+		Queue<Integer> queue = new ArrayDeque<>();
+		failure[ROOT] = ROOT;
+		output[ROOT] = -1;
+		for (int i = 0; i < childKeys[ROOT].length; i++) {
+			int child = childNodes[ROOT][i];
+			rootNext[childKeys[ROOT][i] & 0xff] = child;
+			failure[child] = ROOT;
+			output[child] = -1;
+			queue.add(child);
+		}
+		while (!queue.isEmpty()) {
+			int node = queue.remove();
+			for (int i = 0; i < childKeys[node].length; i++) {
+				byte b = childKeys[node][i];
+				int child = childNodes[node][i];
+				int f = next(failure[node], b);
+				failure[child] = f;
+				output[child] = length[f] > 0 ? f : output[f];
+				queue.add(child);
+			}
+		}
+	}
+
+	private int next(int node, byte b) {
+		while (node != ROOT) {
+			int child = find(childKeys[node], childNodes[node], b);
+			if (child >= 0) {
+				return child;
+			}
+			node = failure[node];
+		}
+		return rootNext[b & 0xff];
+	}
+
+	/**
+	 * Writes {@code len} bytes of {@code b} to {@code out} with every occurrence
+	 * of a value replaced by {@link #MASK}.
+	 */
+	public void mask(byte[] b, int len, OutputStream out) throws IOException {
+		// longest value starting at each offset, only allocated once something matches
+		int[] longestAt = null;
+		int node = ROOT;
+		for (int i = 0; i < len; i++) {
+			node = next(node, b[i]);
+			for (int hit = length[node] > 0 ? node : output[node]; hit >= 0; hit = output[hit]) {
+				if (longestAt == null) {
+					longestAt = new int[len];
+				}
+				int start = i - length[hit] + 1;
+				longestAt[start] = Math.max(longestAt[start], length[hit]);
+			}
+		}
+		if (longestAt == null) {
+			out.write(b, 0, len);
+			return;
+		}
+		int written = 0;
+		for (int i = 0; i < len; i++) {
+			if (longestAt[i] > 0) {
+				out.write(b, written, i - written);
+				out.write(mask);
+				i += longestAt[i] - 1;
+				written = i + 1;
+			}
+		}
+		out.write(b, written, len - written);
+	}
+}
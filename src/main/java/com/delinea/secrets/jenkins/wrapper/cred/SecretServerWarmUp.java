@@ -0,0 +1,106 @@
+package com.delinea.secrets.jenkins.wrapper.cred;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.apache.commons.lang.StringUtils;
+
+import com.delinea.secrets.jenkins.client.SecretFetchExecutor;
+import com.delinea.secrets.jenkins.client.SecretServerClient;
+import com.delinea.secrets.jenkins.client.SecretServerClientRegistry;
+import com.delinea.secrets.jenkins.client.SecretSnapshot;
+import com.delinea.secrets.jenkins.client.SecretValueCache;
+
+import hudson.init.InitMilestone;
+import hudson.init.Initializer;
+import hudson.security.ACL;
+import hudson.security.ACLContext;
+import jenkins.util.Timer;
+
+/**
+ * Warms up the path to the globally configured Secret Server when Jenkins
+ * starts and whenever {@link ServerConfiguration} is saved, if enabled: the
+ * client is built, the service account authenticates, and the configured
+ * secrets are fetched into the secret cache. The first builds after a restart
+ * then find a cached token and values instead of all logging in at once.
+ */
+public final class SecretServerWarmUp {
+	private static final Logger LOGGER = Logger.getLogger(SecretServerWarmUp.class.getName());
+
+	/** Saves in quick succession, such as configuration as code setting one field at a time, warm up once. */
+	private static final long DELAY_SECONDS = 5;
+
+	private static final AtomicReference<Future<?>> PENDING = new AtomicReference<>();
+
+	private SecretServerWarmUp() {
+	}
+
+	@Initializer(after = InitMilestone.JOB_CONFIG_ADAPTED)
+	public static void onStartup() {
+		schedule();
+	}
+
+	/**
+	 * Warms up shortly, replacing a warm-up that has not started yet.
+	 */
+	public static void schedule() {
+		Future<?> next = Timer.get().schedule(() -> SecretFetchExecutor.get().execute(SecretServerWarmUp::warmUp),
+				DELAY_SECONDS, TimeUnit.SECONDS);
+		Future<?> previous = PENDING.getAndSet(next);
+		if (previous != null) {
+			previous.cancel(false);
+		}
+	}
+
+	private static void warmUp() {
+		ServerConfiguration configuration = ServerConfiguration.get();
+		if (!configuration.isWarmUp() || StringUtils.isBlank(configuration.getBaseUrl())
+				|| StringUtils.isBlank(configuration.getCredentialId())) {
+			return;
+		}
+		String baseUrl = configuration.getBaseUrl();
+		try (ACLContext ignored = ACL.as2(ACL.SYSTEM2)) {
+			UserCredentials credential = UserCredentials.get(configuration.getCredentialId(), null);
+			if (credential == null) {
+				LOGGER.warning("[SecretServerWarmUp] Credentials " + configuration.getCredentialId() + " not found");
+				return;
+			}
+			Map<String, String> proxyConfig = configuration.resolveProxy(baseUrl);
+			String username = credential.getUsername();
+			String password = credential.getPassword().getPlainText();
+			SecretServerClient client = SecretServerClientRegistry.get().getClient(baseUrl, username, password,
+					proxyConfig);
+			client.authenticate();
+			LOGGER.info("[SecretServerWarmUp] Authenticated to " + baseUrl);
+
+			List<Integer> ids = configuration.getPrefetchSecretIdList();
+			if (!ids.isEmpty() && configuration.getSecretCacheTtlSeconds() == 0) {
+				LOGGER.warning("[SecretServerWarmUp] Not prefetching secrets because the secret cache is disabled");
+				return;
+			}
+			int fetched = 0;
+			for (int id : ids) {
+				try {
+					SecretValueCache.get().get(baseUrl, username, password, String.valueOf(id),
+							() -> SecretSnapshot.of(id, client.getSecret(id)), null).release();
+					fetched++;
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					return;
+				} catch (Exception e) {
+					LOGGER.log(Level.WARNING, "[SecretServerWarmUp] Unable to prefetch secret " + id, e);
+				}
+			}
+			if (fetched > 0) {
+				LOGGER.info("[SecretServerWarmUp] Prefetched " + fetched + " secrets from " + baseUrl);
+			}
+		} catch (RuntimeException e) {
+			LOGGER.log(Level.WARNING, "[SecretServerWarmUp] Unable to warm up " + baseUrl, e);
+		}
+	}
+}
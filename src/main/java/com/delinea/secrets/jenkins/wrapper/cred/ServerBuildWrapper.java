@@ -2,22 +2,26 @@ package com.delinea.secrets.jenkins.wrapper.cred;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Consumer;
+
+import javax.annotation.CheckForNull;
 
 import org.apache.commons.lang.StringUtils;
 import org.jenkinsci.Symbol;
 import org.kohsuke.stapler.DataBoundConstructor;
 import org.kohsuke.stapler.DataBoundSetter;
-import org.springframework.context.annotation.AnnotationConfigApplicationContext;
-import org.springframework.core.env.MapPropertySource;
 
-import com.delinea.platform.service.AuthenticationService;
-import com.delinea.secrets.jenkins.util.DelineaProxyUtil;
-import com.delinea.server.spring.Secret;
-import com.delinea.server.spring.SecretServer;
-import com.delinea.server.spring.SecretServerFactoryBean;
+import com.delinea.secrets.jenkins.client.SecretFetchExecutor;
+import com.delinea.secrets.jenkins.client.SecretServerClient;
+import com.delinea.secrets.jenkins.client.SecretServerClientRegistry;
+import com.delinea.secrets.jenkins.client.SecretSnapshot;
+import com.delinea.secrets.jenkins.client.SecretValueCache;
+import com.delinea.secrets.jenkins.metrics.SecretServerMetrics;
 
 import hudson.EnvVars;
 import hudson.Extension;
@@ -32,12 +36,7 @@ import hudson.tasks.BuildWrapperDescriptor;
 import jenkins.tasks.SimpleBuildWrapper;
 
 public class ServerBuildWrapper extends SimpleBuildWrapper {
-    private static final String USERNAME_PROPERTY = "server.username";
-    private static final String PASSWORD_PROPERTY = "server.password";
-    private static final String SERVER_URL_PROPERTY = "server.url";
-
     private List<ServerSecret> secrets;
-    private List<String> valuesToMask = new ArrayList<>();
 
     @DataBoundConstructor
     public ServerBuildWrapper(final List<ServerSecret> secrets) {
@@ -55,7 +54,7 @@ public class ServerBuildWrapper extends SimpleBuildWrapper {
 
     @Override
     public ConsoleLogFilter createLoggerDecorator(final Run<?,?> build) {
-        return new ServerConsoleLogFilter(build.getCharset().name(), valuesToMask);
+        return new ServerConsoleLogFilter(build.getCharset().name(), MaskedValues.forRun(build));
     }
 
     @Override
@@ -66,128 +65,267 @@ public class ServerBuildWrapper extends SimpleBuildWrapper {
                       final TaskListener listener,
                       final EnvVars initialEnvironment)
             throws IOException, InterruptedException {
+        final long start = System.nanoTime();
+        try {
+            setUpSecrets(context, build, listener);
+            SecretServerMetrics.get().succeeded(SecretServerMetrics.Operation.SET_UP, start);
+        } catch (IOException | InterruptedException | RuntimeException e) {
+            SecretServerMetrics.get().failed(SecretServerMetrics.Operation.SET_UP, start, e);
+            throw e;
+        }
+    }
 
+    private void setUpSecrets(final Context context, final Run<?,?> build, final TaskListener listener)
+            throws IOException, InterruptedException {
         final ServerConfiguration configuration = ExtensionList.lookupSingleton(ServerConfiguration.class);
 
-        // Loop through each secret config
+        final RunSecretCache runSecrets = RunSecretCache.forRun(build);
+
+        // Resolve credentials and proxy on the build thread, which carries the build's authentication,
+        // once for all the secrets that share a Secret Server URL and credential
+        final Map<List<String>, SecretSession> sessions = new HashMap<>();
+        final List<SecretFetch> fetches = new ArrayList<>(secrets.size());
         for (ServerSecret serverSecret : secrets) {
-            final Map<String, Object> properties = new HashMap<>();
             // Determine base URL (global vs override)
             final String overrideBaseURL = serverSecret.getBaseUrl();
             final String effectiveUrl = StringUtils.isNotBlank(overrideBaseURL)
                     ? overrideBaseURL : configuration.getBaseUrl();
-            properties.put(SERVER_URL_PROPERTY, effectiveUrl);
 
             final String overrideCredId = serverSecret.getCredentialId();
-            final UserCredentials credential = StringUtils.isNotBlank(overrideCredId)
-                    ? UserCredentials.get(overrideCredId, build.getParent())
-                    : UserCredentials.get(configuration.getCredentialId(), build.getParent());
-            if (credential == null) {
-                throw new IOException("No credentials available to access Delinea Secret Server.");
-            }
-            properties.put(USERNAME_PROPERTY, credential.getUsername());
-            properties.put(PASSWORD_PROPERTY, credential.getPassword().getPlainText());
-
-            // Resolve proxy config (host/port/username/password) using shared utility
-            Map<String, String> proxyConfig = DelineaProxyUtil.resolveProxy(
-                 effectiveUrl,
-                 configuration.isUseProxy() ? configuration.getProxyHost() : "",
-                 configuration.isUseProxy() ? String.valueOf(configuration.getProxyPort()) : "",
-                 configuration.isUseProxy() ? configuration.getProxyUsername() : "",
-                 configuration.isUseProxy() && configuration.getProxyPassword() != null
-                         ? configuration.getProxyPassword().getPlainText()
-                         : "",
-                 configuration.isUseProxy() ? configuration.getNoProxyHosts() : ""
-         );
-
-            // Add all proxy property keys found
-            for (Map.Entry<String, String> entry : proxyConfig.entrySet()) {
-                properties.put(entry.getKey(), entry.getValue());
+            final String credentialId = StringUtils.isNotBlank(overrideCredId)
+                    ? overrideCredId : configuration.getCredentialId();
+
+            SecretSession session = sessions.get(Arrays.asList(effectiveUrl, credentialId));
+            if (session == null) {
+                final UserCredentials credential = UserCredentials.get(credentialId, build.getParent());
+                if (credential == null) {
+                    throw new IOException("No credentials available to access Delinea Secret Server.");
+                }
+
+                // Resolve proxy config (host/port/username/password) using shared utility
+                Map<String, String> proxyConfig = configuration.resolveProxy(effectiveUrl);
+
+                listener.getLogger().println("[ServerBuildWrapper][DEBUG] Connecting to Secret Server URL: " + effectiveUrl);
+                session = new SecretSession(effectiveUrl, credential, proxyConfig);
+                sessions.put(Arrays.asList(effectiveUrl, credentialId), session);
             }
+            fetches.add(new SecretFetch(serverSecret, session, runSecrets, listener));
+        }
 
-            listener.getLogger().println("[ServerBuildWrapper][DEBUG] Connecting to Secret Server URL: " + effectiveUrl);
-
-            try (AnnotationConfigApplicationContext applicationContext = new AnnotationConfigApplicationContext()) {
-                applicationContext.getEnvironment().getPropertySources()
-                        .addLast(new MapPropertySource("properties", properties));
-                applicationContext.registerBean(SecretServerFactoryBean.class);
-                applicationContext.registerBean(AuthenticationService.class);
-                applicationContext.refresh();
-
-                SecretServer secretServer = applicationContext.getBean(SecretServer.class);
-                Secret secret = secretServer.getSecret(serverSecret.getId());
-
-                secret.getFields().forEach(field -> {
-                    serverSecret.getMappings().forEach(mapping -> {
-                        if (mapping.getField().equalsIgnoreCase(field.getFieldName())
-                                || mapping.getField().equalsIgnoreCase(field.getSlug())) {
-                            context.env(
-                                StringUtils.trimToEmpty(configuration.getEnvironmentVariablePrefix())
-                                + mapping.getEnvironmentVariable(),
-                                field.getValue());
-                            valuesToMask.add(field.getValue());
+        // Fetch concurrently, and map each result, in the order the secrets were configured, as soon as it is in
+        final MaskedValues valuesToMask = MaskedValues.forRun(build);
+        final String prefix = StringUtils.trimToEmpty(configuration.getEnvironmentVariablePrefix());
+        try {
+            SecretFetchExecutor.get().fetchInOrder(fetches, (index, secret) -> {
+                final ServerSecret serverSecret = fetches.get(index).serverSecret;
+                try {
+                    final Map<String, String> variables = mapFields(serverSecret, secret, prefix,
+                            mapping -> listener.getLogger().println("[ServerBuildWrapper][WARN] Secret "
+                                    + serverSecret.getId() + " has no field '" + mapping.getField() + "'; "
+                                    + prefix + mapping.getEnvironmentVariable() + " is not set"));
+                    for (Map.Entry<String, String> variable : variables.entrySet()) {
+                        if (!valuesToMask.add(variable.getValue())) {
+                            // never expose a value that could not be masked
+                            throw new IOException("Too many secret values to mask in this build (limit "
+                                    + MaskedValues.MAX_CHARS + " characters).");
                         }
-                    });
-                });
-            }catch (Exception ex) {
-                String proxyHost = proxyConfig.getOrDefault("proxy.host", "(none)");
-                String proxyPort = proxyConfig.getOrDefault("proxy.port", "(none)");
-                String proxyUser = proxyConfig.getOrDefault("proxy.username", "(none)");
-                String proxyPass = proxyConfig.getOrDefault("proxy.password", "(none)");
-
-                // Mask username and password
-                String maskedProxyUser = proxyUser.equals("(none)") ? "(none)" : proxyUser.replaceAll(".", "*");
-                String maskedProxyPass = proxyPass.equals("(none)") ? "(none)" : proxyPass.replaceAll(".", "*");
-
-                String maskedProxyInfo = String.format(
-                    "Proxy Host=%s, Port=%s, Username=%s, Password=%s",
-                    proxyHost, proxyPort, maskedProxyUser, maskedProxyPass
-                );
-
-                // Extract root cause
-                Throwable root = ex;
-                while (root.getCause() != null) {
-                    root = root.getCause();
+                        context.env(variable.getKey(), variable.getValue());
+                    }
+                } finally {
+                    // the values now live in the build's environment only
+                    secret.release();
                 }
+            }, SecretSnapshot::release);
+        } catch (SecretFetchExecutor.FetchFailedException e) {
+            throw fetchFailure((SecretFetch) e.getFetch(), e.getCause(), listener);
+        }
+    }
 
-                // Friendly error message
-                String friendlyMessage;
-                if (root instanceof java.net.UnknownHostException) {
-                    friendlyMessage = "Host not found: " + root.getMessage();
-                } else if (root instanceof org.springframework.web.client.HttpClientErrorException) {
-                    int status = ((org.springframework.web.client.HttpClientErrorException) root).getStatusCode().value();
-                    if (status == 407) {
-                        friendlyMessage = "Proxy authentication failed (HTTP 407).";
-                    } else if (status == 400) {
-                        friendlyMessage = "Access denied / invalid credentials (HTTP 400).";
-                    } else if (status == 403) {
-                        friendlyMessage = "Access forbidden (HTTP 403).";
-                    } else {
-                        friendlyMessage = "HTTP error (status " + status + ").";
+    /**
+     * Applies a secret's mappings to its fetched fields, looking each field up
+     * in the secret's {@link ServerSecret.MappingIndex} by name and by slug.
+     * Each mapped field's value is decoded once.
+     *
+     * @param prefix      prepended to every environment variable
+     * @param onUnmatched told of every mapping that matched no field; may be
+     *                    {@code null}
+     * @return the value of each mapped environment variable, prefix included
+     */
+    static Map<String, String> mapFields(final ServerSecret serverSecret, final SecretSnapshot secret,
+                                         final String prefix,
+                                         @CheckForNull final Consumer<ServerSecret.Mapping> onUnmatched) {
+        final ServerSecret.MappingIndex index = serverSecret.getMappingIndex(prefix);
+        final Map<String, String> variables = new LinkedHashMap<>();
+        final boolean[] matched = new boolean[index.size()];
+        for (SecretSnapshot.Field field : secret.getFields()) {
+            final int[] byName = index.lookup(field.getFieldName());
+            final int[] bySlug = index.lookup(field.getSlug());
+            if (byName.length == 0 && bySlug.length == 0) {
+                continue;
+            }
+            final String value = field.getValue();
+            // merge both in mapping order, as if the field were compared with each mapping in turn
+            int n = 0;
+            int s = 0;
+            while (n < byName.length || s < bySlug.length) {
+                final int position;
+                if (s == bySlug.length || n < byName.length && byName[n] <= bySlug[s]) {
+                    position = byName[n++];
+                    if (s < bySlug.length && bySlug[s] == position) {
+                        s++;
                     }
-                } else if (root instanceof java.io.IOException) {
-                    friendlyMessage = "Network I/O error: " + root.getMessage();
                 } else {
-                    friendlyMessage = "Unexpected error: " + root.getMessage();
+                    position = bySlug[s++];
+                }
+                variables.put(index.getVariable(position), value);
+                matched[position] = true;
+            }
+        }
+        if (onUnmatched != null) {
+            for (int i = 0; i < matched.length; i++) {
+                if (!matched[i]) {
+                    onUnmatched.accept(index.getMapping(i));
                 }
+            }
+        }
+        return variables;
+    }
+
+    private static IOException fetchFailure(final SecretFetch fetch, final Throwable ex, final TaskListener listener) {
+        final Map<String, String> proxyConfig = fetch.session.proxyConfig;
+        String proxyHost = proxyConfig.getOrDefault("proxy.host", "(none)");
+        String proxyPort = proxyConfig.getOrDefault("proxy.port", "(none)");
+        String proxyUser = proxyConfig.getOrDefault("proxy.username", "(none)");
+        String proxyPass = proxyConfig.getOrDefault("proxy.password", "(none)");
+
+        // Mask username and password
+        String maskedProxyUser = proxyUser.equals("(none)") ? "(none)" : proxyUser.replaceAll(".", "*");
+        String maskedProxyPass = proxyPass.equals("(none)") ? "(none)" : proxyPass.replaceAll(".", "*");
 
-                // Log details
-                listener.getLogger().println("[ServerBuildWrapper][ERROR] Failed to fetch secret.");
-                listener.getLogger().println("    Secret ID   : " + serverSecret.getId());
-                listener.getLogger().println("    Target URL  : " + effectiveUrl);
-                listener.getLogger().println("    Proxy Info  : " + maskedProxyInfo);
-                listener.getLogger().println("    Root Cause  : " + root.getClass().getSimpleName() + " - " + friendlyMessage);
-
-                // Throw IOException with root cause for build failure
-                throw new IOException(
-                    String.format(
-                        "Failed to fetch secret (id=%s) for host=%s. Proxy used: %s. See logs for details.",
-                        serverSecret.getId(), effectiveUrl, maskedProxyInfo
-                    ),
-                    ex
-                );
+        String maskedProxyInfo = String.format(
+            "Proxy Host=%s, Port=%s, Username=%s, Password=%s",
+            proxyHost, proxyPort, maskedProxyUser, maskedProxyPass
+        );
+
+        // Extract root cause
+        Throwable root = ex;
+        while (root.getCause() != null) {
+            root = root.getCause();
+        }
+
+        // Friendly error message
+        String friendlyMessage;
+        if (root instanceof java.net.UnknownHostException) {
+            friendlyMessage = "Host not found: " + root.getMessage();
+        } else if (root instanceof org.springframework.web.client.HttpClientErrorException) {
+            int status = ((org.springframework.web.client.HttpClientErrorException) root).getStatusCode().value();
+            if (status == 407) {
+                friendlyMessage = "Proxy authentication failed (HTTP 407).";
+            } else if (status == 400) {
+                friendlyMessage = "Access denied / invalid credentials (HTTP 400).";
+            } else if (status == 403) {
+                friendlyMessage = "Access forbidden (HTTP 403).";
+            } else {
+                friendlyMessage = "HTTP error (status " + status + ").";
             }
+        } else if (root instanceof java.io.IOException) {
+            friendlyMessage = "Network I/O error: " + root.getMessage();
+        } else {
+            friendlyMessage = "Unexpected error: " + root.getMessage();
+        }
+
+        // Log details
+        listener.getLogger().println("[ServerBuildWrapper][ERROR] Failed to fetch secret.");
+        listener.getLogger().println("    Secret ID   : " + fetch.serverSecret.getId());
+        listener.getLogger().println("    Target URL  : " + fetch.session.effectiveUrl);
+        listener.getLogger().println("    Proxy Info  : " + maskedProxyInfo);
+        listener.getLogger().println("    Root Cause  : " + root.getClass().getSimpleName() + " - " + friendlyMessage);
+
+        // IOException with root cause for build failure
+        return new IOException(
+            String.format(
+                "Failed to fetch secret (id=%s) for host=%s. Proxy used: %s. See logs for details.",
+                fetch.serverSecret.getId(), fetch.session.effectiveUrl, maskedProxyInfo
+            ),
+            ex
+        );
+    }
+
+    /**
+     * The secrets of a block that share a Secret Server URL and service
+     * account. They are fetched through one client, resolved on first use, and
+     * so one authenticated session.
+     * <p>
+     * Secret Server has no endpoint returning the field values of several
+     * secrets at once, so each secret is still one request; those requests run
+     * concurrently over the client's pooled connections and share its token.
+     */
+    private static final class SecretSession {
+        private final String effectiveUrl;
+        private final UserCredentials credential;
+        private final Map<String, String> proxyConfig;
+        private volatile SecretServerClient client;
+
+        SecretSession(final String effectiveUrl, final UserCredentials credential,
+                      final Map<String, String> proxyConfig) {
+            this.effectiveUrl = effectiveUrl;
+            this.credential = credential;
+            this.proxyConfig = proxyConfig;
+        }
 
+        SecretServerClient client() {
+            SecretServerClient result = client;
+            if (result == null) {
+                synchronized (this) {
+                    result = client;
+                    if (result == null) {
+                        client = result = SecretServerClientRegistry.get().getClient(effectiveUrl,
+                                credential.getUsername(), credential.getPassword().getPlainText(), proxyConfig);
+                    }
+                }
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Fetches one {@link ServerSecret} in its session, unless it was already
+     * fetched during this run or a cached value is available.
+     */
+    private static final class SecretFetch implements SecretFetchExecutor.Fetch<SecretSnapshot> {
+        private final ServerSecret serverSecret;
+        private final SecretSession session;
+        private final RunSecretCache runSecrets;
+        private final TaskListener listener;
+
+        SecretFetch(final ServerSecret serverSecret, final SecretSession session,
+                    final RunSecretCache runSecrets, final TaskListener listener) {
+            this.serverSecret = serverSecret;
+            this.session = session;
+            this.runSecrets = runSecrets;
+            this.listener = listener;
+        }
+
+        @Override
+        public String getBaseUrl() {
+            return session.effectiveUrl;
+        }
+
+        @Override
+        public SecretSnapshot fetch() throws Exception {
+            // the credential was resolved with the build's permissions, so a cached value may be served
+            final String secretId = String.valueOf(serverSecret.getId());
+            final String effectiveUrl = session.effectiveUrl;
+            final String credentialId = session.credential.getId();
+            return runSecrets.get(effectiveUrl, credentialId, secretId,
+                    () -> SecretValueCache.get().get(effectiveUrl, session.credential.getUsername(),
+                            session.credential.getPassword().getPlainText(), secretId,
+                            () -> SecretSnapshot.of(serverSecret.getId(),
+                                    session.client().getSecret(serverSecret.getId())),
+                            age -> listener.getLogger().println(
+                                    "[ServerBuildWrapper][WARN] Using cached value of secret " + serverSecret.getId()
+                                            + " fetched " + age.getSeconds() + "s ago; it is being refreshed from "
+                                            + effectiveUrl)));
         }
     }
 
@@ -3,20 +3,35 @@ package com.delinea.secrets.jenkins.wrapper.cred;
 import java.io.IOException;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
 
 import javax.servlet.ServletException;
 
 import com.cloudbees.plugins.credentials.common.StandardListBoxModel;
+import com.delinea.secrets.jenkins.client.CircuitBreaker;
+import com.delinea.secrets.jenkins.client.ConnectionPool;
+import com.delinea.secrets.jenkins.client.FaultTolerance;
+import com.delinea.secrets.jenkins.client.PersistentSecretCache;
+import com.delinea.secrets.jenkins.client.RateLimiter;
+import com.delinea.secrets.jenkins.client.SecretServerClientRegistry;
+import com.delinea.secrets.jenkins.client.SecretValueCache;
+import com.delinea.secrets.jenkins.global.cred.SecretServerCredentials;
+import com.delinea.secrets.jenkins.util.DelineaProxyUtil;
 
 import org.apache.commons.lang.StringUtils;
 import org.jenkinsci.Symbol;
 import org.kohsuke.stapler.AncestorInPath;
 import org.kohsuke.stapler.DataBoundSetter;
 import org.kohsuke.stapler.QueryParameter;
+import org.kohsuke.stapler.StaplerRequest2;
 import org.kohsuke.stapler.verb.POST;
 
 import hudson.Extension;
 import hudson.ExtensionList;
+import hudson.model.Descriptor.FormException;
 import hudson.model.Item;
 import hudson.security.ACL;
 import hudson.util.FormValidation;
@@ -24,12 +39,27 @@ import hudson.util.ListBoxModel;
 import hudson.util.Secret;
 import jenkins.model.GlobalConfiguration;
 import jenkins.model.Jenkins;
+import net.sf.json.JSONObject;
 
 @Extension
 @Symbol("secretServer")
 public class ServerConfiguration extends GlobalConfiguration {
 	public static final String DEFAULT_ENVIRONMENT_VARIABLE_PREFIX = "TSS_";
 	public static final String API_VERSION = "v1";
+	public static final int DEFAULT_SECRET_CACHE_MAX_ENTRIES = 1000;
+	public static final int DEFAULT_CREDENTIAL_REFRESH_SECONDS = 300;
+	public static final int DEFAULT_STALE_GRACE_SECONDS = 3600;
+	public static final int DEFAULT_RETRY_MAX_ATTEMPTS = 3;
+	public static final int DEFAULT_RETRY_INITIAL_BACKOFF_MILLIS = 200;
+	public static final int DEFAULT_FETCH_DEADLINE_SECONDS = 60;
+	public static final int DEFAULT_REQUEST_TIMEOUT_SECONDS = 30;
+	public static final int DEFAULT_BREAKER_FAILURE_THRESHOLD = 5;
+	public static final int DEFAULT_BREAKER_OPEN_SECONDS = 30;
+	public static final int DEFAULT_MAX_CONNECTIONS = 50;
+	public static final int DEFAULT_MAX_CONNECTIONS_PER_ROUTE = 10;
+	public static final int DEFAULT_CONNECTION_IDLE_SECONDS = 60;
+	public static final int DEFAULT_RATE_LIMIT_BURST = 10;
+	public static final int DEFAULT_RATE_LIMIT_MAX_WAIT_SECONDS = 30;
 
 	/**
 	 * Calls hudson.ExtensionList#lookupSingleton(ServerConfiguration.class) to get
@@ -66,6 +96,29 @@ public class ServerConfiguration extends GlobalConfiguration {
 	private String apiVersion = API_VERSION;
 	private String noProxyHosts;
 	private boolean useProxy;
+	private int secretCacheTtlSeconds;
+	private int secretCacheMaxEntries = DEFAULT_SECRET_CACHE_MAX_ENTRIES;
+	private boolean staleWhileRevalidate;
+	private boolean persistentSecretCache;
+	private int staleGraceSeconds = DEFAULT_STALE_GRACE_SECONDS;
+	private int credentialRefreshSeconds = DEFAULT_CREDENTIAL_REFRESH_SECONDS;
+	private boolean warmUp;
+	private String prefetchSecretIds;
+	private int retryMaxAttempts = DEFAULT_RETRY_MAX_ATTEMPTS;
+	private int retryInitialBackoffMillis = DEFAULT_RETRY_INITIAL_BACKOFF_MILLIS;
+	private int fetchDeadlineSeconds = DEFAULT_FETCH_DEADLINE_SECONDS;
+	private int requestTimeoutSeconds = DEFAULT_REQUEST_TIMEOUT_SECONDS;
+	private int breakerFailureThreshold = DEFAULT_BREAKER_FAILURE_THRESHOLD;
+	private int breakerOpenSeconds = DEFAULT_BREAKER_OPEN_SECONDS;
+	private int maxConnections = DEFAULT_MAX_CONNECTIONS;
+	private int maxConnectionsPerRoute = DEFAULT_MAX_CONNECTIONS_PER_ROUTE;
+	private int connectionIdleSeconds = DEFAULT_CONNECTION_IDLE_SECONDS;
+	private int rateLimitPerSecond;
+	private int rateLimitBurst = DEFAULT_RATE_LIMIT_BURST;
+	private int rateLimitMaxWaitSeconds = DEFAULT_RATE_LIMIT_MAX_WAIT_SECONDS;
+
+	/** The connection settings cached clients were built from. */
+	private transient List<Object> appliedConnection;
 
 	public boolean isUseProxy() {
 	    return useProxy;
@@ -74,7 +127,6 @@ public class ServerConfiguration extends GlobalConfiguration {
 	@DataBoundSetter
 	public void setUseProxy(boolean useProxy) {
 	    this.useProxy = useProxy;
-	    save();
 	}
 
 	public String getProxyHost() {
@@ -84,7 +136,6 @@ public class ServerConfiguration extends GlobalConfiguration {
 	@DataBoundSetter
 	public void setProxyHost(String proxyHost) {
 		this.proxyHost = proxyHost;
-		save();
 	}
 
 	public int getProxyPort() {
@@ -94,7 +145,6 @@ public class ServerConfiguration extends GlobalConfiguration {
 	@DataBoundSetter
 	public void setProxyPort(int proxyPort) {
 		this.proxyPort = proxyPort;
-		save();
 	}
 
 	public String getProxyUsername() {
@@ -104,7 +154,6 @@ public class ServerConfiguration extends GlobalConfiguration {
 	@DataBoundSetter
 	public void setProxyUsername(String proxyUsername) {
 		this.proxyUsername = proxyUsername;
-		save();
 	}
 
 	public Secret getProxyPassword() {
@@ -114,7 +163,6 @@ public class ServerConfiguration extends GlobalConfiguration {
 	@DataBoundSetter
 	public void setProxyPassword(Secret proxyPassword) {
 		this.proxyPassword = proxyPassword;
-		save();
 	}
 
 	public String getNoProxyHosts() {
@@ -124,11 +172,283 @@ public class ServerConfiguration extends GlobalConfiguration {
 	@DataBoundSetter
 	public void setNoProxyHosts(String noProxyHosts) {
 		this.noProxyHosts = noProxyHosts;
-		save();
+	}
+
+	public int getSecretCacheTtlSeconds() {
+		return secretCacheTtlSeconds;
+	}
+
+	@DataBoundSetter
+	public void setSecretCacheTtlSeconds(int secretCacheTtlSeconds) {
+		this.secretCacheTtlSeconds = Math.max(0, secretCacheTtlSeconds);
+	}
+
+	public int getSecretCacheMaxEntries() {
+		return secretCacheMaxEntries;
+	}
+
+	@DataBoundSetter
+	public void setSecretCacheMaxEntries(int secretCacheMaxEntries) {
+		this.secretCacheMaxEntries = secretCacheMaxEntries > 0 ? secretCacheMaxEntries
+				: DEFAULT_SECRET_CACHE_MAX_ENTRIES;
+	}
+
+	public boolean isStaleWhileRevalidate() {
+		return staleWhileRevalidate;
+	}
+
+	@DataBoundSetter
+	public void setStaleWhileRevalidate(boolean staleWhileRevalidate) {
+		this.staleWhileRevalidate = staleWhileRevalidate;
+	}
+
+	public boolean isPersistentSecretCache() {
+		return persistentSecretCache;
+	}
+
+	@DataBoundSetter
+	public void setPersistentSecretCache(boolean persistentSecretCache) {
+		this.persistentSecretCache = persistentSecretCache;
+	}
+
+	public int getStaleGraceSeconds() {
+		return staleGraceSeconds;
+	}
+
+	@DataBoundSetter
+	public void setStaleGraceSeconds(int staleGraceSeconds) {
+		this.staleGraceSeconds = Math.max(0, staleGraceSeconds);
+	}
+
+	public int getCredentialRefreshSeconds() {
+		return credentialRefreshSeconds;
+	}
+
+	@DataBoundSetter
+	public void setCredentialRefreshSeconds(int credentialRefreshSeconds) {
+		this.credentialRefreshSeconds = Math.max(0, credentialRefreshSeconds);
+	}
+
+	public boolean isWarmUp() {
+		return warmUp;
+	}
+
+	@DataBoundSetter
+	public void setWarmUp(boolean warmUp) {
+		this.warmUp = warmUp;
+	}
+
+	public String getPrefetchSecretIds() {
+		return prefetchSecretIds;
+	}
+
+	@DataBoundSetter
+	public void setPrefetchSecretIds(String prefetchSecretIds) {
+		this.prefetchSecretIds = prefetchSecretIds;
+	}
+
+	public int getRetryMaxAttempts() {
+		return retryMaxAttempts;
+	}
+
+	@DataBoundSetter
+	public void setRetryMaxAttempts(int retryMaxAttempts) {
+		this.retryMaxAttempts = retryMaxAttempts > 0 ? retryMaxAttempts : DEFAULT_RETRY_MAX_ATTEMPTS;
+	}
+
+	public int getRetryInitialBackoffMillis() {
+		return retryInitialBackoffMillis;
+	}
+
+	@DataBoundSetter
+	public void setRetryInitialBackoffMillis(int retryInitialBackoffMillis) {
+		this.retryInitialBackoffMillis = Math.max(0, retryInitialBackoffMillis);
+	}
+
+	public int getFetchDeadlineSeconds() {
+		return fetchDeadlineSeconds;
+	}
+
+	@DataBoundSetter
+	public void setFetchDeadlineSeconds(int fetchDeadlineSeconds) {
+		this.fetchDeadlineSeconds = fetchDeadlineSeconds > 0 ? fetchDeadlineSeconds : DEFAULT_FETCH_DEADLINE_SECONDS;
+	}
+
+	public int getRequestTimeoutSeconds() {
+		return requestTimeoutSeconds;
+	}
+
+	@DataBoundSetter
+	public void setRequestTimeoutSeconds(int requestTimeoutSeconds) {
+		this.requestTimeoutSeconds = requestTimeoutSeconds > 0 ? requestTimeoutSeconds
+				: DEFAULT_REQUEST_TIMEOUT_SECONDS;
+	}
+
+	public int getBreakerFailureThreshold() {
+		return breakerFailureThreshold;
+	}
+
+	@DataBoundSetter
+	public void setBreakerFailureThreshold(int breakerFailureThreshold) {
+		this.breakerFailureThreshold = Math.max(0, breakerFailureThreshold);
+	}
+
+	public int getBreakerOpenSeconds() {
+		return breakerOpenSeconds;
+	}
+
+	@DataBoundSetter
+	public void setBreakerOpenSeconds(int breakerOpenSeconds) {
+		this.breakerOpenSeconds = breakerOpenSeconds > 0 ? breakerOpenSeconds : DEFAULT_BREAKER_OPEN_SECONDS;
+	}
+
+	public int getMaxConnections() {
+		return maxConnections;
+	}
+
+	@DataBoundSetter
+	public void setMaxConnections(int maxConnections) {
+		this.maxConnections = maxConnections > 0 ? maxConnections : DEFAULT_MAX_CONNECTIONS;
+	}
+
+	public int getMaxConnectionsPerRoute() {
+		return maxConnectionsPerRoute;
+	}
+
+	@DataBoundSetter
+	public void setMaxConnectionsPerRoute(int maxConnectionsPerRoute) {
+		this.maxConnectionsPerRoute = maxConnectionsPerRoute > 0 ? maxConnectionsPerRoute
+				: DEFAULT_MAX_CONNECTIONS_PER_ROUTE;
+	}
+
+	public int getConnectionIdleSeconds() {
+		return connectionIdleSeconds;
+	}
+
+	@DataBoundSetter
+	public void setConnectionIdleSeconds(int connectionIdleSeconds) {
+		this.connectionIdleSeconds = connectionIdleSeconds > 0 ? connectionIdleSeconds
+				: DEFAULT_CONNECTION_IDLE_SECONDS;
+	}
+
+	public int getRateLimitPerSecond() {
+		return rateLimitPerSecond;
+	}
+
+	@DataBoundSetter
+	public void setRateLimitPerSecond(int rateLimitPerSecond) {
+		this.rateLimitPerSecond = Math.max(0, rateLimitPerSecond);
+	}
+
+	public int getRateLimitBurst() {
+		return rateLimitBurst;
+	}
+
+	@DataBoundSetter
+	public void setRateLimitBurst(int rateLimitBurst) {
+		this.rateLimitBurst = rateLimitBurst > 0 ? rateLimitBurst : DEFAULT_RATE_LIMIT_BURST;
+	}
+
+	public int getRateLimitMaxWaitSeconds() {
+		return rateLimitMaxWaitSeconds;
+	}
+
+	@DataBoundSetter
+	public void setRateLimitMaxWaitSeconds(int rateLimitMaxWaitSeconds) {
+		this.rateLimitMaxWaitSeconds = Math.max(0, rateLimitMaxWaitSeconds);
+	}
+
+	/**
+	 * Shown to administrators on the configuration page.
+	 *
+	 * @return the circuit breaker of every Secret Server contacted so far
+	 */
+	public List<CircuitBreaker> getCircuitBreakers() {
+		return FaultTolerance.get().getCircuitBreakers();
+	}
+
+	/**
+	 * @return the secret ids to fetch when warming up; ids that are not integers
+	 *         are left out
+	 */
+	public List<Integer> getPrefetchSecretIdList() {
+		List<Integer> ids = new ArrayList<>();
+		for (String id : StringUtils.split(StringUtils.defaultString(prefetchSecretIds), ", \t\r\n")) {
+			try {
+				ids.add(Integer.parseInt(id));
+			} catch (NumberFormatException e) {
+				// reported by doCheckPrefetchSecretIds
+			}
+		}
+		return ids;
+	}
+
+	/**
+	 * Resolves the proxy to use for a Secret Server from the proxy settings of
+	 * this configuration and, failing those, the Jenkins proxy.
+	 *
+	 * @param baseUrl - The Secret Server to connect to.
+	 * @return the proxy properties, see {@link DelineaProxyUtil#resolveProxy}
+	 */
+	public Map<String, String> resolveProxy(final String baseUrl) {
+		return DelineaProxyUtil.resolveProxy(baseUrl,
+				useProxy ? proxyHost : "",
+				useProxy ? String.valueOf(proxyPort) : "",
+				useProxy ? proxyUsername : "",
+				useProxy && proxyPassword != null ? proxyPassword.getPlainText() : "",
+				useProxy ? noProxyHosts : "");
 	}
 
 	public ServerConfiguration() {
 		load();
+		applySettings();
+		appliedConnection = connectionSettings();
+	}
+
+	/**
+	 * Binds the submitted form, whose setters only assign, then saves and applies
+	 * it once.
+	 */
+	@Override
+	public synchronized boolean configure(StaplerRequest2 req, JSONObject json) throws FormException {
+		req.bindJSON(this, json);
+		save();
+		return true;
+	}
+
+	/**
+	 * Persists the configuration and applies it. If the base URL, credential or
+	 * proxy settings changed, every cached Secret Server client and proxy
+	 * decision is evicted too, as they may have been made from the previous ones.
+	 */
+	@Override
+	public synchronized void save() {
+		super.save();
+		List<Object> connection = connectionSettings();
+		if (!connection.equals(appliedConnection)) {
+			SecretServerClientRegistry.get().invalidateAll();
+			DelineaProxyUtil.invalidateCache();
+			appliedConnection = connection;
+		}
+		applySettings();
+		SecretServerWarmUp.schedule();
+	}
+
+	private List<Object> connectionSettings() {
+		return Arrays.asList(baseUrl, credentialId, useProxy, proxyHost, proxyPort, proxyUsername, proxyPassword,
+				noProxyHosts);
+	}
+
+	private void applySettings() {
+		SecretValueCache.get().configure(secretCacheTtlSeconds, secretCacheMaxEntries, staleWhileRevalidate,
+				staleGraceSeconds);
+		PersistentSecretCache.get().configure(persistentSecretCache && secretCacheTtlSeconds > 0);
+		FaultTolerance.get().configure(retryMaxAttempts, retryInitialBackoffMillis, fetchDeadlineSeconds,
+				breakerFailureThreshold, breakerOpenSeconds);
+		ConnectionPool.get().configure(maxConnections, maxConnectionsPerRoute, connectionIdleSeconds,
+				requestTimeoutSeconds);
+		RateLimiter.get().configure(rateLimitPerSecond, rateLimitBurst, rateLimitMaxWaitSeconds);
+		SecretServerCredentials.setRefreshInterval(credentialRefreshSeconds);
 	}
 
 	@POST
@@ -139,6 +459,21 @@ public class ServerConfiguration extends GlobalConfiguration {
 		return checkBaseUrl(value);
 	}
 
+	@POST
+	public FormValidation doCheckPrefetchSecretIds(@QueryParameter final String value) {
+		if (!Jenkins.get().hasPermission(Jenkins.ADMINISTER)) {
+			return FormValidation.error("You do not have permission to perform this action");
+		}
+		for (String id : StringUtils.split(StringUtils.defaultString(value), ", \t\r\n")) {
+			try {
+				Integer.parseInt(id);
+			} catch (final NumberFormatException e) {
+				return FormValidation.error("Secret ID is an integer: " + id);
+			}
+		}
+		return FormValidation.ok();
+	}
+
 	@POST
 	public ListBoxModel doFillCredentialIdItems(@AncestorInPath final Item item) {
 		if (item == null && !Jenkins.get().hasPermission(Jenkins.ADMINISTER)
@@ -155,7 +490,6 @@ public class ServerConfiguration extends GlobalConfiguration {
 	@DataBoundSetter
 	public void setCredentialId(final String credentialId) {
 		this.credentialId = credentialId;
-		save();
 	}
 
 	public String getBaseUrl() {
@@ -165,7 +499,6 @@ public class ServerConfiguration extends GlobalConfiguration {
 	@DataBoundSetter
 	public void setBaseUrl(final String baseUrl) {
 		this.baseUrl = StringUtils.removeEnd(baseUrl, "/");
-		save();
 	}
 
 	public String getEnvironmentVariablePrefix() {
@@ -175,7 +508,6 @@ public class ServerConfiguration extends GlobalConfiguration {
 	@DataBoundSetter
 	public void setEnvironmentVariablePrefix(final String environmentVariablePrefix) {
 		this.environmentVariablePrefix = environmentVariablePrefix;
-		save();
 	}
 
 	public String getApiVersion() {
@@ -185,6 +517,5 @@ public class ServerConfiguration extends GlobalConfiguration {
 	@DataBoundSetter
 	public void setApiVersion(final String apiVersion) {
 		this.apiVersion = apiVersion;
-		save();
 	}
 }
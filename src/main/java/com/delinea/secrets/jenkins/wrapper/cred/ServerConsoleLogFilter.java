@@ -1,6 +1,7 @@
 package com.delinea.secrets.jenkins.wrapper.cred;
 
 import hudson.console.ConsoleLogFilter;
+import hudson.console.LineTransformationOutputStream;
 import hudson.model.Run;
 
 import java.io.OutputStream;
@@ -8,36 +9,31 @@ import java.io.Serializable;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Objects;
-import java.util.stream.Collectors;
+import java.util.function.Supplier;
 import java.util.regex.Pattern;
 
-import org.jenkinsci.plugins.credentialsbinding.masking.SecretPatterns;
 import java.util.regex.PatternSyntaxException;
 
 // borrowed from https://github.com/jenkinsci/azure-keyvault-plugin/blob/master/src/main/java/org/jenkinsci/plugins/azurekeyvaultplugin/MaskingConsoleLogFilter.java
 public class ServerConsoleLogFilter extends ConsoleLogFilter implements Serializable {
     private static final long serialVersionUID = 1L;
     private final String charsetName;
-    private final List<String> valuesToMask;
+    private final MaskedValues valuesToMask;
 
-    public ServerConsoleLogFilter(final String charsetName, final List<String> valuesToMask) {
+    public ServerConsoleLogFilter(final String charsetName, final MaskedValues valuesToMask) {
         this.charsetName = charsetName;
         this.valuesToMask = valuesToMask;
     }
 
     @Override
     public OutputStream decorateLogger(Run run, final OutputStream logger) throws IOException, InterruptedException {
-        return new SecretPatterns.MaskingOutputStream(logger, () -> {
-            List<String> values = valuesToMask.stream().filter(Objects::nonNull).collect(Collectors.toList());
-            if (!values.isEmpty()) {
-                return ServerConsoleLogFilter.getAggregateSecretPattern(values);
-            } else {
-                return null;
-            }
-        },charsetName);
+        return new MaskingOutputStream(logger, () -> valuesToMask.matcher(charsetName));
     }
 
+    /**
+     * @deprecated masking no longer uses a regular expression; see {@link SecretMatcher}
+     */
+    @Deprecated
     public static Pattern getAggregateSecretPattern(List<String> patterns) {
         List<String> escapedPatterns = new ArrayList<>();
         for (String pattern : patterns) {
@@ -59,4 +55,27 @@ public class ServerConsoleLogFilter extends ConsoleLogFilter implements Serializ
         }
         return input;
     }
+
+    /**
+     * Masks each line as it is completed, writing unmatched bytes straight
+     * through without decoding them.
+     */
+    static final class MaskingOutputStream extends LineTransformationOutputStream.Delegating {
+        private final Supplier<SecretMatcher> matcher;
+
+        MaskingOutputStream(final OutputStream out, final Supplier<SecretMatcher> matcher) {
+            super(out);
+            this.matcher = matcher;
+        }
+
+        @Override
+        protected void eol(final byte[] b, final int len) throws IOException {
+            final SecretMatcher current = matcher.get();
+            if (current == null) {
+                out.write(b, 0, len);
+            } else {
+                current.mask(b, len, out);
+            }
+        }
+    }
 }
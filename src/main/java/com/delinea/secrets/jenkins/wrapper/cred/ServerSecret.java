@@ -1,7 +1,13 @@
 package com.delinea.secrets.jenkins.wrapper.cred;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.regex.Pattern;
 
 import javax.servlet.ServletException;
@@ -32,6 +38,7 @@ import jenkins.model.Jenkins;
 public class ServerSecret extends AbstractDescribableImpl<ServerSecret> {
     private final int id;
     private final List<Mapping> mappings;
+    private transient volatile MappingIndex mappingIndex;
 
     public int getId() {
         return id;
@@ -47,6 +54,19 @@ public class ServerSecret extends AbstractDescribableImpl<ServerSecret> {
         this.mappings = mappings;
     }
 
+    /**
+     * @param prefix the prefix of every environment variable
+     * @return the mappings compiled for lookup by field name or slug, built
+     *         once and again only if the prefix changes
+     */
+    MappingIndex getMappingIndex(final String prefix) {
+        MappingIndex index = mappingIndex;
+        if (index == null || !index.prefix.equals(prefix)) {
+            mappingIndex = index = new MappingIndex(mappings, prefix);
+        }
+        return index;
+    }
+
     private String baseUrl, credentialId;
 
     public String getBaseUrl() {
@@ -118,6 +138,66 @@ public class ServerSecret extends AbstractDescribableImpl<ServerSecret> {
         }
     }
 
+    /**
+     * A secret's mappings indexed by case-folded field name, so that each
+     * fetched field is matched with one hash lookup by name and one by slug
+     * rather than by comparing it with every mapping.
+     */
+    static final class MappingIndex {
+        private static final int[] NONE = new int[0];
+
+        private final String prefix;
+        private final List<Mapping> mappings;
+        /** The prefixed environment variable of each mapping. */
+        private final String[] variables;
+        /** The positions of the mappings of each field, in ascending order. */
+        private final Map<String, int[]> byField = new HashMap<>();
+
+        MappingIndex(final List<Mapping> mappings, final String prefix) {
+            this.prefix = prefix;
+            this.mappings = mappings == null ? Collections.emptyList() : new ArrayList<>(mappings);
+            this.variables = new String[this.mappings.size()];
+            for (int i = 0; i < variables.length; i++) {
+                final Mapping mapping = this.mappings.get(i);
+                variables[i] = prefix + mapping.getEnvironmentVariable();
+                if (mapping.getField() != null) {
+                    byField.merge(fold(mapping.getField()), new int[] {i}, MappingIndex::concat);
+                }
+            }
+        }
+
+        int size() {
+            return variables.length;
+        }
+
+        Mapping getMapping(final int position) {
+            return mappings.get(position);
+        }
+
+        String getVariable(final int position) {
+            return variables[position];
+        }
+
+        /**
+         * @return the positions of the mappings of this field name or slug, in
+         *         ascending order
+         */
+        int[] lookup(final String nameOrSlug) {
+            return nameOrSlug == null ? NONE : byField.getOrDefault(fold(nameOrSlug), NONE);
+        }
+
+        /** Folds case the way {@link String#equalsIgnoreCase} compares it. */
+        private static String fold(final String value) {
+            return value.toUpperCase(Locale.ROOT).toLowerCase(Locale.ROOT);
+        }
+
+        private static int[] concat(final int[] a, final int[] b) {
+            final int[] both = Arrays.copyOf(a, a.length + b.length);
+            System.arraycopy(b, 0, both, a.length, b.length);
+            return both;
+        }
+    }
+
     @Extension
     @Symbol("secretServerSecret")
     public static final class DescriptorImpl extends Descriptor<ServerSecret> {
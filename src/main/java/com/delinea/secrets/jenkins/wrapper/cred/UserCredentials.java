@@ -1,29 +1,61 @@
 package com.delinea.secrets.jenkins.wrapper.cred;
 
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 
 import org.kohsuke.stapler.DataBoundConstructor;
 
-import com.cloudbees.plugins.credentials.CredentialsMatchers;
+import com.cloudbees.plugins.credentials.Credentials;
 import com.cloudbees.plugins.credentials.CredentialsProvider;
 import com.cloudbees.plugins.credentials.CredentialsScope;
+import com.cloudbees.plugins.credentials.CredentialsStore;
+import com.cloudbees.plugins.credentials.SystemCredentialsProvider;
 import com.cloudbees.plugins.credentials.common.StandardCredentials;
+import com.cloudbees.plugins.credentials.domains.Domain;
 import com.cloudbees.plugins.credentials.impl.UsernamePasswordCredentialsImpl;
-import com.cloudbees.plugins.credentials.matchers.IdMatcher;
+import com.delinea.secrets.jenkins.client.SecretServerClientRegistry;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
 
 import hudson.Extension;
+import hudson.XmlFile;
 import hudson.model.Item;
 import hudson.model.ItemGroup;
+import hudson.model.Saveable;
 import hudson.model.Descriptor.FormException;
+import hudson.model.listeners.ItemListener;
+import hudson.model.listeners.SaveableListener;
 import hudson.security.ACL;
 import jenkins.model.Jenkins;
 
 public class UserCredentials extends UsernamePasswordCredentialsImpl implements StandardCredentials {
     private static final long serialVersionUID = 1L;
 
+    /**
+     * The credentials of this type visible from each context, by id. Every item
+     * in a folder sees the same credentials, so items are indexed by the folder
+     * that holds them, or by the folder itself for a folder, as {@code /} and its
+     * full name; the global context, which also sees system scoped credentials,
+     * is the empty string. Entries are dropped when the credentials store they
+     * were looked up in may have changed or their folder moves, and expire after
+     * a while in case credentials come from a provider that is not saved through
+     * Jenkins.
+     */
+    private static final Cache<String, Map<String, UserCredentials>> BY_CONTEXT = Caffeine.newBuilder()
+            .maximumSize(1000).expireAfterWrite(Duration.ofMinutes(5)).build();
+    /** Bumped on every invalidation so a lookup started before it is not cached. */
+    private static final AtomicLong GENERATION = new AtomicLong();
+
     /**
      * The credentials of this type with this credentialId that apply to this item
      *
@@ -36,22 +68,77 @@ public class UserCredentials extends UsernamePasswordCredentialsImpl implements
 			// If we're inside a folder (item is non-null), check for the read permission at
 			// the folder level.
 			if (item.hasPermission(Item.READ)) {
-				return CredentialsProvider
-						.lookupCredentials(UserCredentials.class, item, ACL.SYSTEM, Collections.emptyList()).stream()
-						.filter(cred -> cred.getId().equals(credentialId)).findFirst().orElse(null);
+				return byId(item).get(credentialId);
 			}
 		} else {
 			// If there's no item (global context), check for global permission to view
 			// credentials.
 			if (Jenkins.get().hasPermission(CredentialsProvider.VIEW)) {
-				return CredentialsMatchers.firstOrNull(CredentialsProvider.lookupCredentials(UserCredentials.class,
-						(ItemGroup<?>) null, ACL.SYSTEM, Collections.emptyList()), new IdMatcher(credentialId));
+				return byId(null).get(credentialId);
 			}
 		}
 
 		return null;
 	}
 
+    /**
+     * Like {@link #get(String, Item)}, without checking any permission, for
+     * callers that have checked the permissions they need already.
+     *
+     * @param credentialId  the id of the credential
+     * @param item         the optional item (context)
+     * @return the credentials or {@code null} if no matching credentials exist
+     */
+    public static UserCredentials lookup(@Nonnull final String credentialId, @Nullable final Item item) {
+        return byId(item).get(credentialId);
+    }
+
+    /**
+     * Callers must have checked permissions for the context already.
+     */
+    private static Map<String, UserCredentials> byId(@Nullable final Item item) {
+        final String context = item == null ? "" : context(item);
+        Map<String, UserCredentials> byId = BY_CONTEXT.getIfPresent(context);
+        if (byId != null) {
+            return byId;
+        }
+        final long generation = GENERATION.get();
+        final List<UserCredentials> credentials = item == null
+                ? CredentialsProvider.lookupCredentials(UserCredentials.class, (ItemGroup<?>) null, ACL.SYSTEM,
+                        Collections.emptyList())
+                : CredentialsProvider.lookupCredentials(UserCredentials.class, item, ACL.SYSTEM,
+                        Collections.emptyList());
+        byId = new HashMap<>();
+        for (UserCredentials credential : credentials) {
+            // the nearest store wins, as it did when the list was searched in order
+            byId.putIfAbsent(credential.getId(), credential);
+        }
+        if (GENERATION.get() == generation) {
+            BY_CONTEXT.put(context, byId);
+        }
+        return byId;
+    }
+
+    static void invalidateAll() {
+        GENERATION.incrementAndGet();
+        BY_CONTEXT.invalidateAll();
+    }
+
+    private static String context(@Nonnull final Item item) {
+        final ItemGroup<?> group = item instanceof ItemGroup ? (ItemGroup<?>) item : item.getParent();
+        return "/" + group.getFullName();
+    }
+
+    /**
+     * Drops the indexed credentials of an item and everything below it.
+     */
+    static void invalidate(@Nonnull final String fullName) {
+        GENERATION.incrementAndGet();
+        final String at = "/" + fullName;
+        final String below = at + "/";
+        BY_CONTEXT.asMap().keySet().removeIf(context -> context.equals(at) || context.startsWith(below));
+    }
+
     @DataBoundConstructor
     public UserCredentials(final CredentialsScope scope, final String id, final String description,
             final String username, final String password) throws FormException {
@@ -66,4 +153,68 @@ public class UserCredentials extends UsernamePasswordCredentialsImpl implements
             return "Delinea Secret Server Application or Platform Service Account Credentials";
         }
     }
+
+    /**
+     * Drops indexed credentials when a credentials store may have changed: all
+     * of them for the global store, and those below a folder when the folder,
+     * whose store is saved along with it, is saved. User stores are never
+     * searched, as lookups run as {@link ACL#SYSTEM}.
+     * <p>
+     * Cached Secret Server clients of the accounts in the saved store whose
+     * password has changed are closed too.
+     */
+    @Extension
+    public static class CredentialsSaveListener extends SaveableListener {
+        @Override
+        public void onChange(final Saveable o, final XmlFile file) {
+            if (o instanceof SystemCredentialsProvider) {
+                invalidateAll();
+                evictRotated(((SystemCredentialsProvider) o).getCredentials());
+            } else if (o instanceof Item && o instanceof ItemGroup) {
+                invalidate(((Item) o).getFullName());
+                final List<Credentials> credentials = new ArrayList<>();
+                for (final CredentialsStore store : CredentialsProvider.lookupStores((ItemGroup<?>) o)) {
+                    if (store.getContext() == o) {
+                        for (final Domain domain : store.getDomains()) {
+                            credentials.addAll(store.getCredentials(domain));
+                        }
+                    }
+                }
+                evictRotated(credentials);
+            }
+        }
+
+        private static void evictRotated(final List<? extends Credentials> credentials) {
+            final Map<String, Set<String>> passwords = new HashMap<>();
+            for (final Credentials credential : credentials) {
+                if (credential instanceof UserCredentials) {
+                    final UserCredentials user = (UserCredentials) credential;
+                    passwords.computeIfAbsent(user.getUsername(), u -> new HashSet<>())
+                            .add(user.getPassword().getPlainText());
+                }
+            }
+            passwords.forEach(SecretServerClientRegistry.get()::evictOtherPasswords);
+        }
+    }
+
+    /**
+     * Drops indexed credentials when a folder moves or is deleted, as they are
+     * indexed by its full name.
+     */
+    @Extension
+    public static class ItemMoveListener extends ItemListener {
+        @Override
+        public void onLocationChanged(final Item item, final String oldFullName, final String newFullName) {
+            if (item instanceof ItemGroup) {
+                invalidate(oldFullName);
+            }
+        }
+
+        @Override
+        public void onDeleted(final Item item) {
+            if (item instanceof ItemGroup) {
+                invalidate(item.getFullName());
+            }
+        }
+    }
 }
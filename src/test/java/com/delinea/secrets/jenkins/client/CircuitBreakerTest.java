@@ -0,0 +1,100 @@
+package com.delinea.secrets.jenkins.client;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.time.Duration;
+
+import org.junit.jupiter.api.Test;
+
+class CircuitBreakerTest {
+	private static final Duration LONG = Duration.ofHours(1);
+
+	private static CircuitBreaker openBreaker() throws CircuitBreakerOpenException {
+		CircuitBreaker breaker = new CircuitBreaker("ss.example.com");
+		breaker.acquire(LONG);
+		breaker.onFailure(1);
+		assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+		return breaker;
+	}
+
+	@Test
+	void staysClosedBelowThreshold() throws CircuitBreakerOpenException {
+		CircuitBreaker breaker = new CircuitBreaker("ss.example.com");
+		for (int i = 0; i < 2; i++) {
+			breaker.acquire(LONG);
+			breaker.onFailure(3);
+		}
+		assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+		assertEquals(2, breaker.getConsecutiveFailures());
+		assertNull(breaker.getOpenedAt());
+		breaker.acquire(LONG);
+	}
+
+	@Test
+	void successResetsConsecutiveFailures() throws CircuitBreakerOpenException {
+		CircuitBreaker breaker = new CircuitBreaker("ss.example.com");
+		breaker.onFailure(3);
+		breaker.onFailure(3);
+		breaker.onSuccess();
+		breaker.onFailure(3);
+		breaker.onFailure(3);
+		assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+		assertEquals(2, breaker.getConsecutiveFailures());
+	}
+
+	@Test
+	void opensAtThresholdAndRejectsCalls() throws CircuitBreakerOpenException {
+		CircuitBreaker breaker = new CircuitBreaker("ss.example.com");
+		for (int i = 0; i < 3; i++) {
+			breaker.acquire(LONG);
+			breaker.onFailure(3);
+		}
+		assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+		assertNotNull(breaker.getOpenedAt());
+		assertThrows(CircuitBreakerOpenException.class, () -> breaker.acquire(LONG));
+		assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+	}
+
+	@Test
+	void letsOneTrialThroughOnceOpenPeriodHasPassed() throws CircuitBreakerOpenException {
+		CircuitBreaker breaker = openBreaker();
+		breaker.acquire(Duration.ZERO);
+		assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+		assertThrows(CircuitBreakerOpenException.class, () -> breaker.acquire(Duration.ZERO));
+	}
+
+	@Test
+	void successfulTrialCloses() throws CircuitBreakerOpenException {
+		CircuitBreaker breaker = openBreaker();
+		breaker.acquire(Duration.ZERO);
+		breaker.onSuccess();
+		assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+		assertEquals(0, breaker.getConsecutiveFailures());
+		assertNull(breaker.getOpenedAt());
+		breaker.acquire(LONG);
+		breaker.acquire(LONG);
+	}
+
+	@Test
+	void failedTrialReopens() throws CircuitBreakerOpenException {
+		CircuitBreaker breaker = openBreaker();
+		breaker.acquire(Duration.ZERO);
+		// a single failure reopens it, whatever the threshold
+		breaker.onFailure(100);
+		assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+		assertThrows(CircuitBreakerOpenException.class, () -> breaker.acquire(LONG));
+	}
+
+	@Test
+	void abandonedTrialLetsAnotherThrough() throws CircuitBreakerOpenException {
+		CircuitBreaker breaker = openBreaker();
+		breaker.acquire(Duration.ZERO);
+		breaker.onAbandoned();
+		assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+		breaker.acquire(Duration.ZERO);
+		assertThrows(CircuitBreakerOpenException.class, () -> breaker.acquire(Duration.ZERO));
+	}
+}
@@ -0,0 +1,195 @@
+package com.delinea.secrets.jenkins.client;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Arrays;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+import org.jvnet.hudson.test.junit.jupiter.WithJenkins;
+
+@WithJenkins
+class PersistentSecretCacheTest {
+	private static final String URL = "https://ss.example.com/SecretServer";
+	private static final String ACCOUNT = "svc\0digest";
+	private static final Duration TTL = Duration.ofMinutes(5);
+
+	private final PersistentSecretCache cache = PersistentSecretCache.get();
+	private Path file;
+
+	@BeforeEach
+	void enable(JenkinsRule j) {
+		file = j.jenkins.getRootDir().toPath().resolve("delinea-secret-server/secret-cache.log");
+		cache.configure(true);
+	}
+
+	@AfterEach
+	void disable() {
+		cache.configure(false);
+	}
+
+	private static SecretSnapshot snapshot(int id, String password) {
+		return new SecretSnapshot(id,
+				Arrays.asList(new SecretSnapshot.Field("Username", "username", "svc-user"),
+						new SecretSnapshot.Field("Password", "password", password),
+						new SecretSnapshot.Field("Notes", "notes", null)));
+	}
+
+	private void write(String secretId, String password, Duration expiresAfter) {
+		SecretSnapshot snapshot = snapshot(Integer.parseInt(secretId), password);
+		try {
+			cache.write(URL, ACCOUNT, secretId, snapshot, expiresAfter);
+		} finally {
+			snapshot.release();
+		}
+	}
+
+	/** @return the password read back, or {@code null} if nothing was */
+	private String readPassword(String account, String secretId) {
+		PersistentSecretCache.Stored stored = cache.read(URL, account, secretId);
+		if (stored == null) {
+			return null;
+		}
+		SecretSnapshot snapshot = stored.getSnapshot();
+		try {
+			assertEquals(Integer.parseInt(secretId), snapshot.getId());
+			assertEquals("svc-user", snapshot.getValue("username"));
+			assertNull(snapshot.getValue("Notes"));
+			return snapshot.getValue("Password");
+		} finally {
+			snapshot.release();
+		}
+	}
+
+	@Test
+	void roundTripThroughDisk() {
+		write("7", "p\u00e4ssw\u00f6rd \u20ac", TTL);
+		write("8", "other", TTL);
+		assertEquals("p\u00e4ssw\u00f6rd \u20ac", readPassword(ACCOUNT, "7"));
+
+		cache.close();
+		assertEquals("p\u00e4ssw\u00f6rd \u20ac", readPassword(ACCOUNT, "7"));
+		assertEquals("other", readPassword(ACCOUNT, "8"));
+	}
+
+	@Test
+	void valuesAreOnlyServedForTheirKey() {
+		write("7", "s3cr3t", TTL);
+		assertNull(readPassword("svc\0another digest", "7"));
+		assertNull(readPassword(ACCOUNT, "70"));
+		assertNull(cache.read("https://other.example.com", ACCOUNT, "7"));
+	}
+
+	@Test
+	void nothingReadableIsWrittenInTheClear() throws IOException {
+		write("7", "s3cr3t-value", TTL);
+		String log = new String(Files.readAllBytes(file), StandardCharsets.ISO_8859_1);
+		assertFalse(log.contains("s3cr3t-value"));
+		assertFalse(log.contains("svc-user"));
+		assertFalse(log.contains("ss.example.com"));
+	}
+
+	@Test
+	void laterRecordSupersedesEarlier() {
+		write("7", "first", TTL);
+		write("7", "second", TTL);
+		cache.close();
+		assertEquals("second", readPassword(ACCOUNT, "7"));
+	}
+
+	@Test
+	void expiredRecordsAreNotServed() {
+		write("7", "s3cr3t", Duration.ZERO);
+		assertNull(readPassword(ACCOUNT, "7"));
+		cache.close();
+		assertNull(readPassword(ACCOUNT, "7"));
+	}
+
+	@Test
+	void tamperedRecordIsDropped() throws IOException {
+		write("7", "s3cr3t", TTL);
+		write("8", "intact", TTL);
+		cache.close();
+		byte[] bytes = Files.readAllBytes(file);
+		// the last byte of the first record's ciphertext, which is followed by the
+		// second record's length prefix and body
+		int firstLength = ByteBuffer.wrap(bytes, 4, 4).getInt();
+		bytes[4 + 4 + firstLength - 1] ^= 1;
+		Files.write(file, bytes);
+
+		assertNull(readPassword(ACCOUNT, "7"));
+		assertEquals("intact", readPassword(ACCOUNT, "8"));
+	}
+
+	@Test
+	void truncatedLogKeepsCompleteRecords() throws IOException {
+		write("7", "s3cr3t", TTL);
+		write("8", "cut short", TTL);
+		cache.close();
+		byte[] bytes = Files.readAllBytes(file);
+		Files.write(file, Arrays.copyOf(bytes, bytes.length - 5));
+
+		assertEquals("s3cr3t", readPassword(ACCOUNT, "7"));
+		assertNull(readPassword(ACCOUNT, "8"));
+	}
+
+	@Test
+	void logOfAnotherFormatIsDiscarded() throws IOException {
+		write("7", "s3cr3t", TTL);
+		cache.close();
+		byte[] bytes = Files.readAllBytes(file);
+		bytes[3] = '2';
+		Files.write(file, bytes);
+
+		assertNull(readPassword(ACCOUNT, "7"));
+	}
+
+	@Test
+	void compactionKeepsOnlyLatestRecords() throws IOException {
+		for (int i = 0; i < 2000; i++) {
+			write(String.valueOf(i % 10), "value " + i, TTL);
+		}
+		long size = Files.size(file);
+		assertTrue(size <= 64 * 1024, "log was not compacted: " + size + " bytes");
+		for (int i = 0; i < 10; i++) {
+			assertEquals("value " + (1990 + i), readPassword(ACCOUNT, String.valueOf(i)));
+		}
+
+		cache.close();
+		assertEquals("value 1999", readPassword(ACCOUNT, "9"));
+		// reading a log with superseded records compacts it straight away
+		assertTrue(Files.size(file) <= size);
+	}
+
+	@Test
+	void clearEmptiesLog() throws IOException {
+		write("7", "s3cr3t", TTL);
+		cache.clear();
+		assertNull(readPassword(ACCOUNT, "7"));
+		assertEquals(4, Files.size(file));
+		cache.close();
+		assertNull(readPassword(ACCOUNT, "7"));
+	}
+
+	@Test
+	void disablingDeletesLog() {
+		write("7", "s3cr3t", TTL);
+		assertTrue(Files.exists(file));
+		cache.configure(false);
+		assertFalse(Files.exists(file));
+		assertNull(cache.read(URL, ACCOUNT, "7"));
+		cache.configure(true);
+		assertNull(readPassword(ACCOUNT, "7"));
+	}
+}
@@ -0,0 +1,103 @@
+package com.delinea.secrets.jenkins.client;
+
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Every test uses hosts of its own, as buckets are kept for the life of the
+ * {@link RateLimiter}. A maximum wait of 0 makes any request that would have
+ * to wait fail straight away, so no test sleeps.
+ */
+class RateLimiterTest {
+	private final RateLimiter limiter = RateLimiter.get();
+
+	@AfterEach
+	void restoreDefaults() {
+		limiter.configure(0, 10, 30);
+	}
+
+	private static boolean isImmediate(CompletableFuture<Void> turn) {
+		return turn.isDone() && !turn.isCompletedExceptionally();
+	}
+
+	private static void assertRateLimited(CompletableFuture<Void> turn) {
+		ExecutionException e = assertThrows(ExecutionException.class, turn::get);
+		assertInstanceOf(RateLimitedException.class, e.getCause());
+	}
+
+	@Test
+	void unlimitedByDefault() {
+		for (int i = 0; i < 1000; i++) {
+			assertTrue(isImmediate(limiter.acquireAsync("unlimited.example.com")));
+		}
+	}
+
+	@Test
+	void burstIsAvailableOnFirstUse() {
+		limiter.configure(1, 5, 0);
+		// the stored burst, then the turn that is free now
+		for (int i = 0; i < 6; i++) {
+			assertTrue(isImmediate(limiter.acquireAsync("burst.example.com")), "request " + i);
+		}
+		assertRateLimited(limiter.acquireAsync("burst.example.com"));
+	}
+
+	@Test
+	void hostsHaveBucketsOfTheirOwn() {
+		limiter.configure(1, 1, 0);
+		limiter.acquireAsync("one.example.com");
+		limiter.acquireAsync("one.example.com");
+		assertRateLimited(limiter.acquireAsync("one.example.com"));
+		assertTrue(isImmediate(limiter.acquireAsync("two.example.com")));
+		// host names are not case sensitive
+		assertRateLimited(limiter.acquireAsync("ONE.example.com"));
+	}
+
+	@Test
+	void retryAfterPausesHostWhileLimited() {
+		limiter.configure(100, 10, 0);
+		limiter.onResponse("paused.example.com", 503, "60");
+		assertRateLimited(limiter.acquireAsync("paused.example.com"));
+		assertTrue(isImmediate(limiter.acquireAsync("other-paused.example.com")));
+	}
+
+	@Test
+	void retryAfterIsIgnoredWhenUnlimited() {
+		limiter.onResponse("ignored.example.com", 429, "60");
+		assertTrue(isImmediate(limiter.acquireAsync("ignored.example.com")));
+	}
+
+	@Test
+	void pauseIsLiftedWhenLimitingIsTurnedOff() {
+		limiter.configure(100, 10, 0);
+		limiter.onResponse("lifted.example.com", 429, "60");
+		assertRateLimited(limiter.acquireAsync("lifted.example.com"));
+		limiter.configure(0, 10, 0);
+		assertTrue(isImmediate(limiter.acquireAsync("lifted.example.com")));
+	}
+
+	@Test
+	void retryAfterOnlyCountsFor429And503() {
+		limiter.configure(100, 10, 0);
+		limiter.onResponse("ok.example.com", 500, "60");
+		limiter.onResponse("ok.example.com", 200, "60");
+		limiter.onResponse("ok.example.com", 429, "");
+		limiter.onResponse("ok.example.com", 429, "not a date");
+		limiter.onResponse("ok.example.com", 429, "0");
+		assertTrue(isImmediate(limiter.acquireAsync("ok.example.com")));
+	}
+
+	@Test
+	void retryAfterMayBeADate() {
+		limiter.configure(100, 10, 0);
+		limiter.onResponse("dated.example.com", 429, "Wed, 21 Oct 2099 07:28:00 GMT");
+		assertRateLimited(limiter.acquireAsync("dated.example.com"));
+	}
+}
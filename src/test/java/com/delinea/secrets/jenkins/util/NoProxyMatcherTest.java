@@ -0,0 +1,118 @@
+package com.delinea.secrets.jenkins.util;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+class NoProxyMatcherTest {
+
+	@Test
+	void emptyListMatchesNothing() {
+		assertFalse(NoProxyMatcher.compile(null).matches("example.com"));
+		assertFalse(NoProxyMatcher.compile("").matches("example.com"));
+		assertFalse(NoProxyMatcher.compile("example.com").matches(""));
+		assertFalse(NoProxyMatcher.compile("example.com").matches(null));
+	}
+
+	@Test
+	void domainMatchesItselfAndHostsBelowIt() {
+		NoProxyMatcher matcher = NoProxyMatcher.compile("example.com");
+		assertTrue(matcher.matches("example.com"));
+		assertTrue(matcher.matches("api.example.com"));
+		assertTrue(matcher.matches("a.b.example.com"));
+		assertFalse(matcher.matches("badexample.com"));
+		assertFalse(matcher.matches("example.com.evil.org"));
+		assertFalse(matcher.matches("com"));
+	}
+
+	@Test
+	void leadingDotAndWildcardLabelMatchLikeDomain() {
+		for (String entry : new String[] { ".example.com", "*.example.com" }) {
+			NoProxyMatcher matcher = NoProxyMatcher.compile(entry);
+			assertTrue(matcher.matches("example.com"), entry);
+			assertTrue(matcher.matches("api.example.com"), entry);
+			assertFalse(matcher.matches("badexample.com"), entry);
+		}
+	}
+
+	@Test
+	void trailingDotIsIgnored() {
+		assertTrue(NoProxyMatcher.compile("example.com").matches("api.example.com."));
+		assertTrue(NoProxyMatcher.compile("example.com.").matches("api.example.com"));
+		assertTrue(NoProxyMatcher.compile("example.com.").matches("example.com."));
+		assertFalse(NoProxyMatcher.compile("example.com.").matches("example.org."));
+	}
+
+	@Test
+	void matchingIsCaseInsensitive() {
+		assertTrue(NoProxyMatcher.compile("Example.COM").matches("API.example.com"));
+		assertTrue(NoProxyMatcher.compile("HOST-*.corp").matches("host-1.CORP"));
+	}
+
+	@Test
+	void entriesAreSeparatedByCommasOrWhitespace() {
+		NoProxyMatcher matcher = NoProxyMatcher.compile("one.com, two.com\nthree.com\tfour.com");
+		assertTrue(matcher.matches("one.com"));
+		assertTrue(matcher.matches("two.com"));
+		assertTrue(matcher.matches("three.com"));
+		assertTrue(matcher.matches("four.com"));
+		assertFalse(matcher.matches("five.com"));
+	}
+
+	@Test
+	void starMatchesEveryHost() {
+		assertTrue(NoProxyMatcher.compile("*").matches("anything.example"));
+		assertTrue(NoProxyMatcher.compile("other.com, *").matches("10.0.0.1"));
+	}
+
+	@Test
+	void wildcardMatchesWholeHostName() {
+		NoProxyMatcher matcher = NoProxyMatcher.compile("host-*.corp, *.internal.*");
+		assertTrue(matcher.matches("host-12.corp"));
+		assertFalse(matcher.matches("host-12.corp.example.com"));
+		assertFalse(matcher.matches("myhost-12.corp"));
+		assertTrue(matcher.matches("vault.internal.example"));
+		assertFalse(matcher.matches("internal.example"));
+	}
+
+	@Test
+	void ipv4Cidr() {
+		NoProxyMatcher matcher = NoProxyMatcher.compile("10.0.0.0/8, 192.168.16.0/20");
+		assertTrue(matcher.matches("10.1.2.3"));
+		assertFalse(matcher.matches("11.1.2.3"));
+		assertTrue(matcher.matches("192.168.16.1"));
+		assertTrue(matcher.matches("192.168.31.255"));
+		assertFalse(matcher.matches("192.168.32.0"));
+		assertFalse(matcher.matches("192.168.15.255"));
+	}
+
+	@Test
+	void ipv6Cidr() {
+		NoProxyMatcher matcher = NoProxyMatcher.compile("fd00::/8, [2001:db8::]/32");
+		assertTrue(matcher.matches("fd12::1"));
+		assertTrue(matcher.matches("[fd12::1]"));
+		assertTrue(matcher.matches("2001:db8:1::1"));
+		assertFalse(matcher.matches("2001:db9::1"));
+		assertFalse(matcher.matches("10.0.0.1"));
+	}
+
+	@Test
+	void cidrBoundaries() {
+		assertTrue(NoProxyMatcher.compile("0.0.0.0/0").matches("203.0.113.7"));
+		assertTrue(NoProxyMatcher.compile("203.0.113.7/32").matches("203.0.113.7"));
+		assertFalse(NoProxyMatcher.compile("203.0.113.7/32").matches("203.0.113.8"));
+	}
+
+	@Test
+	void cidrDoesNotResolveHostNames() {
+		assertFalse(NoProxyMatcher.compile("127.0.0.0/8").matches("localhost"));
+	}
+
+	@Test
+	void invalidCidrIsIgnored() {
+		NoProxyMatcher matcher = NoProxyMatcher.compile("10.0.0.0/33, example.com/8, 10.0.0.0/x, other.com");
+		assertFalse(matcher.matches("10.0.0.1"));
+		assertTrue(matcher.matches("other.com"));
+	}
+}
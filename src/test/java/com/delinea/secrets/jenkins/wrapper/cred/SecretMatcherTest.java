@@ -0,0 +1,97 @@
+package com.delinea.secrets.jenkins.wrapper.cred;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.jupiter.api.Test;
+
+class SecretMatcherTest {
+
+	private static String mask(String text, String... values) throws IOException {
+		SecretMatcher matcher = SecretMatcher.compile(Arrays.asList(values), "UTF-8");
+		byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		matcher.mask(bytes, bytes.length, out);
+		return out.toString(StandardCharsets.UTF_8);
+	}
+
+	/** Writes {@code text} through the console filter's stream in chunks of {@code chunk} bytes. */
+	private static String maskStream(String text, int chunk, String... values) throws IOException {
+		SecretMatcher matcher = SecretMatcher.compile(Arrays.asList(values), "UTF-8");
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		try (ServerConsoleLogFilter.MaskingOutputStream stream = new ServerConsoleLogFilter.MaskingOutputStream(out,
+				() -> matcher)) {
+			byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+			for (int i = 0; i < bytes.length; i += chunk) {
+				stream.write(bytes, i, Math.min(chunk, bytes.length - i));
+			}
+		}
+		return out.toString(StandardCharsets.UTF_8);
+	}
+
+	@Test
+	void nothingToFind() {
+		assertNull(SecretMatcher.compile(Collections.emptyList(), "UTF-8"));
+		assertNull(SecretMatcher.compile(Arrays.asList("", null), "UTF-8"));
+	}
+
+	@Test
+	void masksEveryOccurrence() throws IOException {
+		assertEquals("user **** and **** again", mask("user s3cr3t and s3cr3t again", "s3cr3t"));
+		assertEquals("no secrets here", mask("no secrets here", "s3cr3t"));
+		assertEquals("****", mask("s3cr3t", "s3cr3t"));
+	}
+
+	@Test
+	void longestValueWinsOverItsPrefix() throws IOException {
+		assertEquals("my ****!", mask("my password!", "pass", "password"));
+		assertEquals("my ****!", mask("my password!", "password", "pass"));
+	}
+
+	@Test
+	void valueInsideAnotherIsMaskedWithIt() throws IOException {
+		assertEquals("my ****!", mask("my password!", "word", "password"));
+		assertEquals("my ****!", mask("my password!", "ssw", "password"));
+	}
+
+	@Test
+	void leftmostOfOverlappingValuesWins() throws IOException {
+		assertEquals("x****dx", mask("xabcdx", "abc", "bcd"));
+		assertEquals("********a", mask("aaaaa", "aa"));
+	}
+
+	@Test
+	void failureLinksFollowSharedSuffixes() throws IOException {
+		// "abcd" leaves "abce" after "abc" and has to resume inside "bcd"
+		assertEquals("a****", mask("abcd", "abce", "bcd"));
+		assertEquals("s**** ****", mask("she hers", "he", "hers"));
+	}
+
+	@Test
+	void matchesEncodedBytes() throws IOException {
+		assertEquals("mot de passe: ****.", mask("mot de passe: caf\u00e9\u20ac.", "caf\u00e9\u20ac"));
+		assertEquals("caf", mask("caf", "caf\u00e9"));
+	}
+
+	@Test
+	void valueWrittenAcrossWritesIsMasked() throws IOException {
+		String text = "token=s3cr3t-value\n";
+		for (int chunk = 1; chunk <= text.length(); chunk++) {
+			assertEquals("token=****\n", maskStream(text, chunk, "s3cr3t-value"), "chunk " + chunk);
+		}
+	}
+
+	@Test
+	void valuesAtLineBoundariesAreMasked() throws IOException {
+		assertEquals("****\n****\r\nend ****\n",
+				maskStream("s3cr3t\ns3cr3t\r\nend s3cr3t\n", 3, "s3cr3t"));
+		// the last line has no line ending, and is masked when the stream is closed
+		assertEquals("first\n****", maskStream("first\ns3cr3t", 4, "s3cr3t"));
+	}
+}